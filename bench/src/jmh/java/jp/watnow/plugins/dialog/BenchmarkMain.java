@@ -0,0 +1,69 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+import org.junit.runner.notification.Failure;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.view.Choreographer;
+
+/**
+ * Runs the JMH benchmarks inside a Robolectric sandbox.
+ *
+ * The plugin only links against android-all inside the sandbox, so JMH cannot
+ * fork a fresh JVM for each benchmark; it runs them in this one instead. The
+ * GC profiler adds gc.alloc.rate.norm, the bytes allocated per operation.
+ *
+ * The jmh.include system property selects benchmarks by regular expression.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27, manifest = Config.NONE)
+public class BenchmarkMain {
+
+    public static void main(String[] args) {
+        Result result = JUnitCore.runClasses(BenchmarkMain.class);
+        for (Failure failure : result.getFailures()) {
+            System.err.println(failure.getTrace());
+        }
+        System.exit(result.wasSuccessful() ? 0 : 1);
+    }
+
+    @Test
+    public void runBenchmarks() throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(System.getProperty("jmh.include", ".*Benchmark.*"))
+                .forks(0)
+                .addProfiler(GCProfiler.class)
+                .build();
+        // Robolectric's Choreographer takes the thread that first uses it for
+        // the main thread, and benchmarks show dialogs on JMH worker threads.
+        Choreographer.getInstance();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,93 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.os.Looper;
+
+/**
+ * One dialog per operation, from the bridge call through building and showing
+ * the dialog to the answer for a button press, for each dialog action.
+ *
+ * Most of the time goes to Robolectric resolving the dialog theme, so compare
+ * actions and revisions with each other rather than with a device.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+public class ConstructionBenchmark {
+
+    @Param({ "alert", "confirm", "prompt", "list", "multiList", "login" })
+    public String action;
+
+    private PluginHarness harness;
+    private JSONArray args;
+
+    @Setup
+    public void setUp() throws JSONException {
+        if (Looper.myLooper() == null) {
+            Looper.prepare();
+        }
+        this.harness = new PluginHarness();
+        this.harness.start();
+        this.harness.webView.stopRecording();
+        if (this.action.equals("alert")) {
+            this.args = new JSONArray("[\"Message\", \"Title\", \"OK\"]");
+        } else if (this.action.equals("confirm")) {
+            this.args = new JSONArray("[\"Message\", \"Title\", [\"Yes\", \"No\", \"Later\"]]");
+        } else if (this.action.equals("prompt")) {
+            this.args = new JSONArray("[\"Message\", \"Title\", [\"OK\", \"Cancel\"], \"Default\", \"normal\"]");
+        } else if (this.action.equals("list")) {
+            this.args = new JSONArray("[\"Title\", [\"One\", \"Two\", \"Three\", \"Four\", \"Five\"]]");
+        } else if (this.action.equals("multiList")) {
+            this.args = new JSONArray("[\"Title\", [\"One\", \"Two\", \"Three\", \"Four\", \"Five\"], [\"OK\", \"Cancel\"], {\"selected\": [1, 3]}]");
+        } else {
+            this.args = new JSONArray("[\"Title\", \"Message\", [\"Login\", \"Cancel\"], [\"user\", \"\"]]");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.harness.shutdown();
+    }
+
+    @Benchmark
+    public void showAndAnswer() throws JSONException {
+        this.harness.call(this.action, this.args, "Construction");
+        this.harness.idle();
+        this.harness.answer();
+    }
+}
@@ -0,0 +1,89 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cordova.CallbackContext;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.os.Looper;
+
+/**
+ * Cost of a bridge call up to the point where a dialog would be queued: the
+ * action table lookup, argument and option handling, building the request and
+ * answering it. The queue holds one dialog that is kept on screen, so every
+ * alert is dispatched and then rejected without touching the UI thread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+public class DispatchBenchmark {
+
+    private PluginHarness harness;
+    private final JSONArray noArgs = new JSONArray();
+    private JSONArray alertArgs;
+
+    @Setup
+    public void setUp() throws JSONException {
+        if (Looper.myLooper() == null) {
+            Looper.prepare();
+        }
+        this.harness = new PluginHarness();
+        this.harness.preferences.set("DialogQueueCapacity", 1);
+        this.harness.start();
+        this.harness.call("alert", "Busy", "Busy", "OK");
+        this.harness.idle();
+        this.harness.webView.stopRecording();
+        this.alertArgs = new JSONArray("[\"Message\", \"Title\", \"OK\", {\"priority\": 1, \"timeout\": 5000}]");
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.harness.shutdown();
+    }
+
+    @Benchmark
+    public boolean unknownAction() throws JSONException {
+        return this.harness.plugin.execute("noSuchAction", this.noArgs, new CallbackContext("Dispatch", this.harness.webView));
+    }
+
+    @Benchmark
+    public boolean answeredAction() throws JSONException {
+        return this.harness.plugin.execute("resetStats", this.noArgs, new CallbackContext("Dispatch", this.harness.webView));
+    }
+
+    @Benchmark
+    public boolean dialogAction() throws JSONException {
+        return this.harness.plugin.execute("alert", this.alertArgs, new CallbackContext("Dispatch", this.harness.webView));
+    }
+}
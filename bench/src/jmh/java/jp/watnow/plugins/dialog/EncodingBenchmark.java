@@ -0,0 +1,117 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.os.Looper;
+
+/**
+ * Encoding of the result a dialog answers with, from the values the button
+ * handler has to the message the bridge sends to JavaScript, in the default
+ * JSON object encoding and the compact multipart one.
+ *
+ * gc.alloc.rate.norm is the bytes allocated per result. The message size, the
+ * characters getMessage() hands to the bridge summed over all parts, is printed
+ * once per trial, since it does not vary between operations. confirm and
+ * multiList answer the same way in both encodings and are there for scale.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+public class EncodingBenchmark {
+
+    @Param({ "confirm", "prompt", "list", "multiList", "login" })
+    public String action;
+
+    @Param({ "false", "true" })
+    public boolean compact;
+
+    private PluginHarness harness;
+    private DialogRequest request;
+    private final int[] selected = { 1, 3, 4 };
+
+    @Setup
+    public void setUp() {
+        if (Looper.myLooper() == null) {
+            Looper.prepare();
+        }
+        this.harness = new PluginHarness();
+        this.harness.webView.stopRecording();
+        DialogScheduler scheduler = new DialogScheduler(this.harness.cordova, 1, false, new DialogMetrics());
+        this.request = new DialogRequest(scheduler, this.action, null, DialogRequest.PRIORITY_NORMAL,
+                new CallbackContext("Encoding", this.harness.webView), this.harness.webView);
+        this.request.compact = this.compact;
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.println(String.format("%nencoding: %s%s %d chars/result", this.action, this.compact ? " compact" : "", messageLength(result())));
+        this.harness.shutdown();
+    }
+
+    @Benchmark
+    public int encode() {
+        return messageLength(result());
+    }
+
+    private PluginResult result() {
+        if (this.action.equals("confirm")) {
+            return new PluginResult(PluginResult.Status.OK, 2);
+        } else if (this.action.equals("prompt")) {
+            return this.request.result(1, "Entered text", null, -1);
+        } else if (this.action.equals("list")) {
+            return this.request.result(1, null, null, 3);
+        } else if (this.action.equals("multiList")) {
+            return this.request.selectionResult(1, this.selected);
+        }
+        return this.request.result(1, "user@example.com", "s3cret-passw0rd", -1);
+    }
+
+    /**
+     * Returns the characters the bridge sends for a result, over all parts of a
+     * multipart one. A null part is sent as its type alone.
+     */
+    static int messageLength(PluginResult result) {
+        if (result.getMessageType() == PluginResult.MESSAGE_TYPE_MULTIPART) {
+            int length = 0;
+            for (int i = 0; i < result.getMultipartMessagesSize(); i++) {
+                length += messageLength(result.getMultipartMessage(i));
+            }
+            return length;
+        }
+        return result.getMessageType() == PluginResult.MESSAGE_TYPE_NULL ? 0 : result.getMessage().length();
+    }
+}
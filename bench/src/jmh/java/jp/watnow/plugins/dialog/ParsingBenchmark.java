@@ -0,0 +1,101 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.text.Html;
+
+/**
+ * Parsing done off the UI thread: a rich message of about 64 KB from Markdown
+ * to HTML and from HTML to paragraphs, and building and querying a 10000 entry
+ * suggestion dictionary.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+public class ParsingBenchmark {
+
+    private String markdown;
+    private String html;
+    private JSONArray dictionary;
+    private SuggestionIndex index;
+
+    @Setup
+    public void setUp() throws JSONException {
+        StringBuilder text = new StringBuilder();
+        for (int section = 0; text.length() < 64 * 1024; section++) {
+            text.append("## Section ").append(section).append("\n\n");
+            text.append("Some **bold** and *italic* text with `code` and a [link](https://example.com/")
+                    .append(section).append(").\nA second line of the same paragraph.\n\n");
+            text.append("- first item\n- second item\n- third item\n\n");
+        }
+        this.markdown = text.toString();
+        this.html = RichMessage.markdownToHtml(this.markdown);
+        this.dictionary = new JSONArray();
+        for (int i = 0; i < 10000; i++) {
+            JSONObject entry = new JSONObject();
+            entry.put("text", "Entry " + Integer.toString(i * 7919 % 10000, 36));
+            entry.put("weight", i % 100);
+            this.dictionary.put(entry);
+        }
+        this.index = SuggestionIndex.build(this.dictionary);
+    }
+
+    @Benchmark
+    public String markdownToHtml() {
+        return RichMessage.markdownToHtml(this.markdown);
+    }
+
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public CharSequence[] htmlToParagraphs() {
+        return RichMessage.split(Html.fromHtml(this.html));
+    }
+
+    @Benchmark
+    public SuggestionIndex suggestionDictionary() throws JSONException {
+        return SuggestionIndex.build(this.dictionary);
+    }
+
+    @Benchmark
+    public String[] suggestionShortPrefix() {
+        return this.index.lookup("e", SuggestionIndex.DEFAULT_LIMIT);
+    }
+
+    @Benchmark
+    public String[] suggestionLongPrefix() {
+        return this.index.lookup("entry 1", SuggestionIndex.DEFAULT_LIMIT);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27, manifest = Config.NONE)
+public class BatchTest {
+
+    private PluginHarness harness;
+
+    @Before
+    public void setUp() {
+        this.harness = new PluginHarness();
+        this.harness.start();
+    }
+
+    @After
+    public void tearDown() {
+        this.harness.shutdown();
+    }
+
+    @Test
+    public void compactStepIsAnsweredAsJsonWithoutChangingTheStep() throws JSONException {
+        JSONObject options = new JSONObject().put("compact", true);
+        JSONArray args = new JSONArray().put("Title").put(new JSONArray("[\"One\", \"Two\"]")).put(options);
+        JSONArray steps = new JSONArray().put(new JSONObject().put("action", "list").put("args", args));
+        String callbackId = this.harness.call("batch", steps);
+        this.harness.idle();
+        this.harness.answer();
+
+        JSONObject done = new JSONObject(this.harness.webView.finalResult(callbackId).getMessage());
+        JSONObject result = done.getJSONArray("results").getJSONObject(0).getJSONObject("result");
+        assertEquals(0, result.getInt("buttonIndex"));
+        assertTrue(options.getBoolean("compact"));
+        assertTrue(steps.getJSONObject(0).getJSONArray("args").getJSONObject(2).getBoolean("compact"));
+    }
+
+    @Test
+    public void dismissingTheBatchIdClosesTheStepAndEndsTheBatch() throws JSONException {
+        JSONObject alert = new JSONObject().put("action", "alert")
+                .put("args", new JSONArray().put("Message").put("Title").put("OK").put(new JSONObject().put("id", "own")));
+        JSONArray steps = new JSONArray().put(alert).put(alert);
+        String callbackId = this.harness.call("batch", steps, new JSONObject().put("id", "flow"));
+        this.harness.idle();
+        assertTrue(this.harness.showing() != null);
+
+        String dismiss = this.harness.call("dismiss", "own");
+        this.harness.idle();
+        assertEquals("false", this.harness.webView.finalResult(dismiss).getMessage());
+        dismiss = this.harness.call("dismiss", "flow");
+        this.harness.idle();
+        assertEquals("true", this.harness.webView.finalResult(dismiss).getMessage());
+
+        JSONArray results = new JSONObject(this.harness.webView.finalResult(callbackId).getMessage()).getJSONArray("results");
+        assertEquals(1, results.length());
+        assertEquals(DialogRequest.BUTTON_CANCELLED, results.getJSONObject(0).getInt("result"));
+        assertEquals(null, this.harness.showing());
+    }
+}
@@ -0,0 +1,41 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.robolectric.annotation.Implements;
+import org.robolectric.shadows.ShadowAlertDialog;
+
+import android.app.AlertDialog;
+
+/**
+ * Counts every AlertDialog constructed, shown or not. Robolectric creates a
+ * shadow together with each object it shadows, so this is the real number of
+ * dialogs built, not the plugin's own bookkeeping.
+ */
+@Implements(AlertDialog.class)
+public class CountingAlertDialog extends ShadowAlertDialog {
+
+    static final AtomicInteger constructed = new AtomicInteger();
+
+    public CountingAlertDialog() {
+        constructed.incrementAndGet();
+    }
+}
@@ -0,0 +1,218 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Runs the store against a plain JCE key in place of the AndroidKeyStore, with
+ * an executor whose tasks run only when the test says so.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27, manifest = Config.NONE)
+public class CredentialStoreTest {
+
+    private static final long TTL = 60 * 1000;
+
+    /**
+     * Queues tasks until runAll() is called.
+     */
+    static class ManualExecutor extends AbstractExecutorService {
+        private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        public void execute(Runnable task) {
+            this.tasks.add(task);
+        }
+
+        void runAll() {
+            while (!this.tasks.isEmpty()) {
+                this.tasks.remove(0).run();
+            }
+        }
+
+        public void shutdown() {
+        }
+
+        public List<Runnable> shutdownNow() {
+            return this.tasks;
+        }
+
+        public boolean isShutdown() {
+            return false;
+        }
+
+        public boolean isTerminated() {
+            return false;
+        }
+
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+
+    /**
+     * Records what the store hands to its listener.
+     */
+    static class Loaded implements CredentialStore.Listener {
+        String username;
+        String password;
+        int calls;
+
+        public void onLoaded(char[] username, char[] password) {
+            this.username = new String(username);
+            this.password = new String(password);
+            this.calls++;
+        }
+    }
+
+    private final ManualExecutor executor = new ManualExecutor();
+    private SharedPreferences preferences;
+    private CredentialStore.KeyProvider keys;
+
+    @Before
+    public void setUp() throws GeneralSecurityException {
+        Robolectric.getForegroundThreadScheduler().pause();
+        this.preferences = RuntimeEnvironment.application.getSharedPreferences(CredentialStore.PREFERENCES_NAME, Context.MODE_PRIVATE);
+        KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(256);
+        final SecretKey key = generator.generateKey();
+        this.keys = new CredentialStore.KeyProvider() {
+            public SecretKey getKey() {
+                return key;
+            }
+        };
+    }
+
+    private CredentialStore newStore() {
+        return new CredentialStore(this.preferences, this.keys, this.executor, TTL);
+    }
+
+    @Test
+    public void savedCredentialsAreStoredEncryptedAndLoadBack() {
+        newStore().save("account", "alice", "s3cret");
+        this.executor.runAll();
+        String stored = this.preferences.getString("account", null);
+        assertTrue(stored != null && !stored.contains("alice") && !stored.contains("s3cret"));
+
+        // A new store has nothing in memory and decrypts what was stored.
+        Loaded loaded = new Loaded();
+        newStore().load("account", loaded);
+        assertEquals(0, loaded.calls);
+        this.executor.runAll();
+        Robolectric.flushForegroundThreadScheduler();
+        assertEquals(1, loaded.calls);
+        assertEquals("alice", loaded.username);
+        assertEquals("s3cret", loaded.password);
+    }
+
+    @Test
+    public void credentialsStoredForAnotherAccountDoNotDecrypt() {
+        newStore().save("account", "alice", "s3cret");
+        this.executor.runAll();
+        this.preferences.edit().putString("other", this.preferences.getString("account", null)).apply();
+
+        Loaded loaded = new Loaded();
+        newStore().load("other", loaded);
+        this.executor.runAll();
+        Robolectric.flushForegroundThreadScheduler();
+        assertEquals(0, loaded.calls);
+        assertFalse(this.preferences.contains("other"));
+    }
+
+    @Test
+    public void cachedCredentialsAreWipedWhenTheTtlPasses() {
+        CredentialStore store = newStore();
+        store.save("account", "alice", "s3cret");
+        this.executor.runAll();
+
+        Loaded loaded = new Loaded();
+        store.load("account", loaded);
+        assertEquals(1, loaded.calls);
+
+        // Nothing reads the entry; the timer alone drops it.
+        Robolectric.getForegroundThreadScheduler().advanceBy(TTL, TimeUnit.MILLISECONDS);
+        loaded = new Loaded();
+        store.load("account", loaded);
+        assertEquals(0, loaded.calls);
+        this.executor.runAll();
+        Robolectric.flushForegroundThreadScheduler();
+        assertEquals(1, loaded.calls);
+    }
+
+    @Test
+    public void forgetWinsOverAPendingSave() {
+        CredentialStore store = newStore();
+        store.save("account", "alice", "s3cret");
+        store.forget("account");
+        this.executor.runAll();
+        assertNull(this.preferences.getString("account", null));
+
+        Loaded loaded = new Loaded();
+        store.load("account", loaded);
+        this.executor.runAll();
+        Robolectric.flushForegroundThreadScheduler();
+        assertEquals(0, loaded.calls);
+    }
+
+    @Test
+    public void theLatestOfTwoPendingSavesIsStored() {
+        CredentialStore store = newStore();
+        store.save("account", "alice", "first");
+        store.save("other", "bob", "kept");
+        store.save("account", "alice", "second");
+        this.executor.runAll();
+
+        Loaded loaded = new Loaded();
+        newStore().load("account", loaded);
+        newStore().load("other", loaded);
+        this.executor.runAll();
+        Robolectric.flushForegroundThreadScheduler();
+        assertEquals(2, loaded.calls);
+        assertEquals("bob", loaded.username);
+
+        loaded = new Loaded();
+        newStore().load("account", loaded);
+        this.executor.runAll();
+        Robolectric.flushForegroundThreadScheduler();
+        assertEquals("second", loaded.password);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.robolectric.Shadows.shadowOf;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.app.AlertDialog;
+import android.view.View;
+
+/**
+ * Each dialog action must build exactly one AlertDialog per shown request:
+ * no throwaway create() before show(), and none for a coalesced twin. The
+ * locale text direction applies to the message alone.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27, manifest = Config.NONE, shadows = CountingAlertDialog.class)
+public class DialogConstructionTest {
+
+    private PluginHarness harness;
+
+    @Before
+    public void setUp() {
+        this.harness = new PluginHarness();
+        this.harness.start();
+        CountingAlertDialog.constructed.set(0);
+    }
+
+    @After
+    public void tearDown() {
+        this.harness.shutdown();
+    }
+
+    private void showAndAnswer(String action, String args) throws JSONException {
+        String callbackId = "Construction" + action;
+        this.harness.call(action, new JSONArray(args), callbackId);
+        this.harness.idle();
+        this.harness.answer();
+        assertNotNull(this.harness.webView.finalResult(callbackId));
+    }
+
+    @Test
+    public void everyActionBuildsOneDialogPerCall() throws JSONException {
+        showAndAnswer("alert", "[\"Message\", \"Title\", \"OK\"]");
+        assertEquals(1, CountingAlertDialog.constructed.get());
+        showAndAnswer("confirm", "[\"Message\", \"Title\", [\"Yes\", \"No\"]]");
+        assertEquals(2, CountingAlertDialog.constructed.get());
+        showAndAnswer("prompt", "[\"Message\", \"Title\", [\"OK\", \"Cancel\"], \"Default\", \"normal\"]");
+        assertEquals(3, CountingAlertDialog.constructed.get());
+        showAndAnswer("list", "[\"Title\", [\"One\", \"Two\"]]");
+        assertEquals(4, CountingAlertDialog.constructed.get());
+        showAndAnswer("multiList", "[\"Title\", [\"One\", \"Two\"], [\"OK\", \"Cancel\"]]");
+        assertEquals(5, CountingAlertDialog.constructed.get());
+        showAndAnswer("login", "[\"Title\", \"Message\", [\"Login\", \"Cancel\"], [\"user\", \"\"]]");
+        assertEquals(6, CountingAlertDialog.constructed.get());
+    }
+
+    @Test
+    public void coalescedCallsShareOneDialog() throws JSONException {
+        this.harness.call("alert", "Busy", "Busy", "OK");
+        this.harness.call("alert", "Twin", "Twin", "OK");
+        this.harness.call("alert", "Twin", "Twin", "OK");
+        this.harness.idle();
+        this.harness.answer();
+        this.harness.answer();
+        assertEquals(2, CountingAlertDialog.constructed.get());
+        assertEquals(2, this.harness.query("queueStats").getInt("shown"));
+    }
+
+    @Test
+    public void onlyTheMessageTakesTheLocaleTextDirection() throws JSONException {
+        this.harness.call("prompt", "Message", "Title", new JSONArray().put("OK"), "", "normal");
+        this.harness.idle();
+        AlertDialog dialog = this.harness.showing();
+        assertEquals(View.TEXT_DIRECTION_LOCALE, dialog.findViewById(android.R.id.message).getRawTextDirection());
+        assertEquals(View.TEXT_DIRECTION_INHERIT, dialog.getWindow().getDecorView().getRawTextDirection());
+        assertEquals(View.TEXT_DIRECTION_INHERIT, ((View) shadowOf(dialog).getView()).getRawTextDirection());
+    }
+}
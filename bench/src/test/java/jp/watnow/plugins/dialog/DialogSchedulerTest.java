@@ -0,0 +1,154 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27, manifest = Config.NONE)
+public class DialogSchedulerTest {
+
+    private PluginHarness harness;
+    private DialogScheduler scheduler;
+    private int shows;
+    private final ArrayList<String> shown = new ArrayList<String>();
+
+    @Before
+    public void setUp() {
+        this.harness = new PluginHarness();
+        this.scheduler = new DialogScheduler(this.harness.cordova, 8, false, new DialogMetrics());
+    }
+
+    @After
+    public void tearDown() {
+        this.harness.shutdown();
+    }
+
+    private DialogRequest submit(String callbackId, String id) {
+        DialogRequest request = new DialogRequest(this.scheduler, "alert", null, DialogRequest.PRIORITY_NORMAL,
+                new CallbackContext(callbackId, this.harness.webView), this.harness.webView);
+        if (id != null) {
+            request.addId(id);
+        }
+        this.scheduler.submit(request, new Runnable() {
+            public void run() {
+                shows++;
+            }
+        });
+        return request;
+    }
+
+    private DialogRequest submit(final String callbackId, String key, int priority) {
+        DialogRequest request = new DialogRequest(this.scheduler, "alert", key, priority,
+                new CallbackContext(callbackId, this.harness.webView), this.harness.webView);
+        this.scheduler.submit(request, new Runnable() {
+            public void run() {
+                shown.add(callbackId);
+            }
+        });
+        return request;
+    }
+
+    @Test
+    public void requestCancelledBeforeItsShowRunsIsNotShown() {
+        submit("first", "late");
+        // The show is posted; dismiss gets to the UI thread first.
+        assertTrue(this.scheduler.cancel("late"));
+        this.harness.idle();
+        assertEquals(0, this.shows);
+        assertEquals(String.valueOf(DialogRequest.BUTTON_CANCELLED), this.harness.webView.finalResult("first").getMessage());
+    }
+
+    @Test
+    public void requestTimedOutBeforeItsShowRunsIsNotShown() {
+        DialogRequest request = submit("first", null);
+        this.scheduler.onTimeout(request);
+        this.harness.idle();
+        assertEquals(0, this.shows);
+        assertEquals(String.valueOf(DialogRequest.BUTTON_TIMEOUT), this.harness.webView.finalResult("first").getMessage());
+    }
+
+    @Test
+    public void onlyTheNextRequestIsShownAfterCancelAll() {
+        submit("first", null);
+        submit("second", null);
+        assertEquals(2, this.scheduler.cancelAll());
+        submit("third", null);
+        this.harness.idle();
+        assertEquals(1, this.shows);
+        assertEquals(null, this.harness.webView.finalResult("third"));
+    }
+
+    @Test
+    public void destroyAnswersWaitingAndLaterRequests() {
+        submit("first", null);
+        submit("second", null);
+        this.harness.idle();
+        assertEquals(1, this.shows);
+        this.scheduler.destroy();
+        submit("third", null);
+        this.harness.idle();
+        assertEquals(1, this.shows);
+        for (String callbackId : new String[] { "first", "second", "third" }) {
+            assertEquals(1, this.harness.webView.finalCount(callbackId));
+            assertEquals(String.valueOf(DialogRequest.BUTTON_CANCELLED), this.harness.webView.finalResult(callbackId).getMessage());
+        }
+    }
+
+    @Test
+    public void requestWhoseTurnComesWhileTheActivityFinishesIsAnswered() {
+        this.harness.activity().finish();
+        submit("first", null);
+        this.harness.idle();
+        assertEquals(0, this.shows);
+        assertEquals(String.valueOf(DialogRequest.BUTTON_CANCELLED), this.harness.webView.finalResult("first").getMessage());
+    }
+
+    @Test
+    public void coalescedRequestTakesTheHigherPriority() {
+        DialogRequest visible = submit("visible", null, DialogRequest.PRIORITY_NORMAL);
+        this.harness.idle();
+        DialogRequest low = submit("low", "same", DialogRequest.PRIORITY_NORMAL);
+        DialogRequest middle = submit("middle", null, 1);
+        submit("urgent", "same", 2);
+        this.harness.idle();
+
+        visible.sendPluginResult(new PluginResult(PluginResult.Status.OK, 1));
+        this.harness.idle();
+        low.sendPluginResult(new PluginResult(PluginResult.Status.OK, 1));
+        this.harness.idle();
+        middle.sendPluginResult(new PluginResult(PluginResult.Status.OK, 1));
+        this.harness.idle();
+        assertEquals(Arrays.asList("visible", "low", "middle"), this.shown);
+        assertEquals("1", this.harness.webView.finalResult("urgent").getMessage());
+    }
+}
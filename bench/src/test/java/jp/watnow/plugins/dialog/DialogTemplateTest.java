@@ -0,0 +1,61 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27, manifest = Config.NONE)
+public class DialogTemplateTest {
+
+    private static String message(String text, String params) throws JSONException {
+        JSONArray args = new JSONArray().put(text).put("Title").put("OK");
+        return DialogTemplate.compile("alert", args, null).args(new JSONArray(params), null).getString(0);
+    }
+
+    @Test
+    public void parametersAreFilledIn() throws JSONException {
+        assertEquals("Hello Ann, 2 new", message("Hello {0}, {1} new", "[\"Ann\", 2]"));
+        assertEquals("Missing {3}", message("Missing {3}", "[]"));
+    }
+
+    @Test
+    public void longAndZeroPaddedNumbersArePlainText() throws JSONException {
+        assertEquals("{99999999999} {0007} Ann", message("{99999999999} {0007} {0}", "[\"Ann\"]"));
+    }
+
+    @Test
+    public void everyShowingHasItsOwnId() throws JSONException {
+        JSONArray args = new JSONArray().put("Message").put("Title").put("OK");
+        DialogTemplate template = DialogTemplate.compile("alert", args, new JSONObject().put("id", "fixed").put("timeout", 5));
+        JSONObject options = template.args(null, null).getJSONObject(3);
+        assertFalse(options.has("id"));
+        assertEquals(5, options.getInt("timeout"));
+        assertEquals("dialog7", template.args(null, new JSONObject().put("id", "dialog7")).getJSONObject(3).getString("id"));
+    }
+}
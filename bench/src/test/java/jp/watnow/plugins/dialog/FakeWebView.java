@@ -0,0 +1,124 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginResult;
+import org.robolectric.RuntimeEnvironment;
+
+import android.content.Context;
+
+/**
+ * Records every result the plugin sends, per callback id, in place of the
+ * bridge to JavaScript.
+ */
+class FakeWebView implements CordovaWebView {
+
+    private final ConcurrentHashMap<String, List<PluginResult>> results = new ConcurrentHashMap<String, List<PluginResult>>();
+    private final ConcurrentHashMap<String, Long> finishedAt = new ConcurrentHashMap<String, Long>();
+    private final AtomicInteger finalResults = new AtomicInteger();
+    private volatile boolean recording = true;
+
+    public void sendPluginResult(PluginResult result, String callbackId) {
+        if (!this.recording) {
+            return;
+        }
+        List<PluginResult> sent = this.results.get(callbackId);
+        if (sent == null) {
+            List<PluginResult> created = new ArrayList<PluginResult>(1);
+            sent = this.results.putIfAbsent(callbackId, created);
+            if (sent == null) {
+                sent = created;
+            }
+        }
+        synchronized (sent) {
+            sent.add(result);
+        }
+        if (!result.getKeepCallback()) {
+            this.finishedAt.putIfAbsent(callbackId, System.nanoTime());
+            this.finalResults.incrementAndGet();
+        }
+    }
+
+    public Context getContext() {
+        return RuntimeEnvironment.application;
+    }
+
+    /**
+     * Stops keeping results, so a benchmark sending millions of them runs in
+     * constant memory. Only the count of final results goes on.
+     */
+    void stopRecording() {
+        this.recording = false;
+    }
+
+    /**
+     * Returns the results sent to a callback so far, oldest first.
+     */
+    List<PluginResult> results(String callbackId) {
+        List<PluginResult> sent = this.results.get(callbackId);
+        if (sent == null) {
+            return new ArrayList<PluginResult>();
+        }
+        synchronized (sent) {
+            return new ArrayList<PluginResult>(sent);
+        }
+    }
+
+    /**
+     * Returns how many results without keepCallback a callback got.
+     */
+    int finalCount(String callbackId) {
+        int count = 0;
+        for (PluginResult result : results(callbackId)) {
+            if (!result.getKeepCallback()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the first final result of a callback, or null.
+     */
+    PluginResult finalResult(String callbackId) {
+        for (PluginResult result : results(callbackId)) {
+            if (!result.getKeepCallback()) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns System.nanoTime() of the first final result of a callback, or null.
+     */
+    Long finishedAt(String callbackId) {
+        return this.finishedAt.get(callbackId);
+    }
+
+    int finalResults() {
+        return this.finalResults.get();
+    }
+}
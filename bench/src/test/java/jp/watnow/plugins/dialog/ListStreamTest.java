@@ -0,0 +1,87 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * A streaming list is forgotten once its dialog is answered, however that happens.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27, manifest = Config.NONE)
+public class ListStreamTest {
+
+    private PluginHarness harness;
+
+    @Before
+    public void setUp() {
+        this.harness = new PluginHarness();
+        this.harness.start();
+    }
+
+    @After
+    public void tearDown() {
+        this.harness.shutdown();
+    }
+
+    private String begin(String listId) throws JSONException {
+        return this.harness.call("listBegin", listId, "Title", new JSONArray("[\"One\", \"Two\"]"), new JSONObject());
+    }
+
+    private int openStreams() throws JSONException {
+        return this.harness.query("stats").getInt("listStreams");
+    }
+
+    @Test
+    public void answeredListIsForgotten() throws JSONException {
+        begin("answered");
+        this.harness.idle();
+        assertEquals(1, openStreams());
+        this.harness.answer();
+        assertEquals(0, openStreams());
+    }
+
+    @Test
+    public void listDismissedWhileQueuedIsForgotten() throws JSONException {
+        this.harness.call("alert", "Message", "Title", "OK");
+        String callbackId = begin("queued");
+        this.harness.idle();
+        assertEquals(1, openStreams());
+
+        this.harness.call("dismissAll");
+        this.harness.idle();
+        assertNotNull(this.harness.webView.finalResult(callbackId));
+        assertEquals(0, openStreams());
+
+        String append = this.harness.call("listAppend", "queued", new JSONArray("[\"Three\"]"));
+        assertEquals(PluginResult.Status.ERROR.ordinal(), this.harness.webView.finalResult(append).getStatus());
+    }
+}
@@ -0,0 +1,80 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.cordova.CallbackContext;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Overflow merging with a channel that admits one notice and then runs dry.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27, manifest = Config.NONE)
+public class NoticeChannelTest {
+
+    private PluginHarness harness;
+    private NoticeChannel channel;
+
+    @Before
+    public void setUp() {
+        this.harness = new PluginHarness();
+        this.channel = new NoticeChannel(this.harness.cordova, 0.001, true);
+    }
+
+    @After
+    public void tearDown() {
+        this.harness.shutdown();
+    }
+
+    private void submit(String callbackId, boolean snackbar, JSONObject options) {
+        this.channel.submit(new NoticeChannel.Notice(callbackId, snackbar, options, new CallbackContext(callbackId, this.harness.webView)));
+    }
+
+    private String event(String callbackId) throws JSONException {
+        return new JSONObject(this.harness.webView.finalResult(callbackId).getMessage()).getString("event");
+    }
+
+    @Test
+    public void overflowOnlyMergesIntoTheSameKindOfNotice() throws JSONException {
+        submit("toast", false, null);
+        submit("snackbar", true, new JSONObject().put("action", "Undo"));
+        submit("keyed", false, new JSONObject().put("key", "sync"));
+        submit("another toast", false, null);
+        assertEquals("dropped", event("snackbar"));
+        assertEquals("dropped", event("keyed"));
+        assertEquals(null, this.harness.webView.finalResult("another toast"));
+
+        JSONObject stats = this.channel.stats();
+        assertEquals(1, stats.getInt("merged"));
+        assertEquals(2, stats.getInt("dropped"));
+
+        this.channel.clear();
+        assertEquals(2, new JSONObject(this.harness.webView.finalResult("toast").getMessage()).getInt("count"));
+        assertEquals("hidden", event("another toast"));
+    }
+}
@@ -0,0 +1,202 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Hammers the plugin from several bridge threads at once while the test thread
+ * plays the UI thread and answers every dialog as it comes up.
+ *
+ * Nearly every call asks for a dialog of its own; every eighth repeats the
+ * call before it, so coalescing is exercised without hiding the dialogs. Every
+ * call must be answered exactly once, each shown request must build exactly
+ * one dialog, and the repeats still waiting must be coalesced.
+ *
+ * Printed are throughput, the time a bridge thread spends in execute(), the
+ * plugin's own percentiles for showing a dialog, call to answer latency (mostly
+ * the wait behind earlier dialogs, since they are shown one at a time) and
+ * bytes allocated per call. Showing a dialog takes tens of milliseconds under
+ * Robolectric, mostly theme and resource lookups, so the times are those of
+ * the harness, not a device.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27, manifest = Config.NONE, shadows = CountingAlertDialog.class)
+public class NotificationLoadTest {
+
+    private static final int THREADS = 8;
+    private static final int CALLS_PER_THREAD = 50;
+    private static final int REPEAT_EVERY = 8;
+
+    private PluginHarness harness;
+
+    @Before
+    public void setUp() {
+        this.harness = new PluginHarness();
+        this.harness.preferences.set("DialogQueueCapacity", THREADS * CALLS_PER_THREAD);
+        this.harness.start();
+        CountingAlertDialog.constructed.set(0);
+    }
+
+    @After
+    public void tearDown() {
+        this.harness.shutdown();
+    }
+
+    @Test
+    public void answersEveryCallOnceUnderLoad() throws Exception {
+        final int calls = THREADS * CALLS_PER_THREAD;
+        final String[] callbackIds = new String[calls];
+        final long[] calledAt = new long[calls];
+        final long[] bridgeNanos = new long[calls];
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(THREADS);
+        final AtomicLong bridgeBytes = new AtomicLong();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                        long before = allocatedBytes();
+                        for (int i = 0; i < CALLS_PER_THREAD; i++) {
+                            int call = thread * CALLS_PER_THREAD + i;
+                            int dialog = i % REPEAT_EVERY == REPEAT_EVERY - 1 ? call - 1 : call;
+                            String callbackId = "Load" + call;
+                            callbackIds[call] = callbackId;
+                            calledAt[call] = System.nanoTime();
+                            if (dialog % 2 == 0) {
+                                harness.call("alert", new JSONArray(Arrays.asList("Message " + dialog, "Alert", "OK")), callbackId);
+                            } else {
+                                harness.call("confirm", new JSONArray(Arrays.asList("Message " + dialog, "Confirm", new JSONArray(Arrays.asList("Yes", "No")))), callbackId);
+                            }
+                            bridgeNanos[call] = System.nanoTime() - calledAt[call];
+                        }
+                        bridgeBytes.addAndGet(allocatedBytes() - before);
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "bridge-" + t).start();
+        }
+
+        long uiBefore = allocatedBytes();
+        long began = System.nanoTime();
+        start.countDown();
+        int answered = 0;
+        long giveUp = System.currentTimeMillis() + 120000;
+        while (done.getCount() > 0 || this.harness.webView.finalResults() < calls) {
+            assertTrue("Timed out with " + this.harness.webView.finalResults() + " of " + calls + " answered", System.currentTimeMillis() < giveUp);
+            this.harness.idle();
+            if (this.harness.showing() != null) {
+                this.harness.answer();
+                answered++;
+            } else {
+                Thread.yield();
+            }
+        }
+        long elapsed = System.nanoTime() - began;
+        long uiBytes = allocatedBytes() - uiBefore;
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+
+        long[] latencies = new long[calls];
+        for (int i = 0; i < calls; i++) {
+            assertEquals("Final results for " + callbackIds[i], 1, this.harness.webView.finalCount(callbackIds[i]));
+            PluginResult result = this.harness.webView.finalResult(callbackIds[i]);
+            assertEquals(PluginResult.Status.OK.ordinal(), result.getStatus());
+            latencies[i] = this.harness.webView.finishedAt(callbackIds[i]) - calledAt[i];
+        }
+
+        JSONObject stats = this.harness.query("queueStats");
+        assertEquals(calls, stats.getInt("submitted"));
+        assertEquals(answered, stats.getInt("shown"));
+        assertEquals(stats.getInt("shown"), CountingAlertDialog.constructed.get());
+        assertEquals(calls, stats.getInt("shown") + stats.getInt("coalesced"));
+        assertTrue(stats.getInt("coalesced") <= calls / REPEAT_EVERY);
+        assertEquals(0, stats.getInt("inFlight"));
+
+        JSONObject actions = this.harness.query("stats").getJSONObject("actions");
+        Arrays.sort(latencies);
+        Arrays.sort(bridgeNanos);
+        System.out.println(String.format(
+                "load: %d calls from %d threads, %d dialogs shown, %d coalesced in %.1f ms%n"
+                + "load: throughput %.0f calls/s, %.0f dialogs/s%n"
+                + "load: execute() us p50 %.1f p90 %.1f p99 %.1f max %.1f%n"
+                + "load: %s%n"
+                + "load: %s%n"
+                + "load: call to answer ms p50 %.2f p90 %.2f p99 %.2f max %.2f%n"
+                + "load: allocated B/call bridge %d, ui %d",
+                calls, THREADS, answered, stats.getInt("coalesced"), elapsed / 1e6,
+                calls / (elapsed / 1e9), answered / (elapsed / 1e9),
+                percentile(bridgeNanos, 50) * 1e3, percentile(bridgeNanos, 90) * 1e3, percentile(bridgeNanos, 99) * 1e3, bridgeNanos[calls - 1] / 1e3,
+                show(actions, "alert"), show(actions, "confirm"),
+                percentile(latencies, 50), percentile(latencies, 90), percentile(latencies, 99), latencies[calls - 1] / 1e6,
+                bridgeBytes.get() / calls, uiBytes / calls));
+    }
+
+    /**
+     * Formats the plugin's percentiles for building and showing an action's
+     * dialogs. They are bucket bounds, so powers of two.
+     */
+    private static String show(JSONObject actions, String action) throws JSONException {
+        JSONObject phase = actions.getJSONObject(action).getJSONObject("show");
+        return String.format("%s show us p50 %d p90 %d p99 %d", action,
+                phase.getLong("p50Micros"), phase.getLong("p90Micros"), phase.getLong("p99Micros"));
+    }
+
+    private static double percentile(long[] sorted, int percent) {
+        int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(index, 0)] / 1e6;
+    }
+
+    /**
+     * Bytes allocated so far by the calling thread, or 0 where the JVM cannot tell.
+     */
+    static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.robolectric.Shadows.shadowOf;
+
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.app.AlertDialog;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27, manifest = Config.NONE)
+public class NotificationUpdateTest {
+
+    private PluginHarness harness;
+
+    @Before
+    public void setUp() {
+        this.harness = new PluginHarness();
+        this.harness.start();
+    }
+
+    @After
+    public void tearDown() {
+        this.harness.shutdown();
+    }
+
+    private PluginResult update(String id, JSONObject changes) throws JSONException {
+        String callbackId = this.harness.call("update", id, changes);
+        this.harness.idle();
+        return this.harness.webView.finalResult(callbackId);
+    }
+
+    @Test
+    public void listDialogKeepsItsRowsAndOnlyTakesANewTitle() throws JSONException {
+        this.harness.call("list", "Title", new JSONArray("[\"One\", \"Two\"]"), new JSONObject().put("id", "rows"));
+        this.harness.idle();
+        AlertDialog dialog = this.harness.showing();
+        assertNotNull(dialog);
+
+        PluginResult rejected = update("rows", new JSONObject().put("title", "New title").put("message", "Text"));
+        assertEquals(PluginResult.Status.ERROR.ordinal(), rejected.getStatus());
+        assertEquals("Title", shadowOf(dialog).getTitle().toString());
+        assertEquals(2, dialog.getListView().getAdapter().getCount());
+
+        PluginResult renamed = update("rows", new JSONObject().put("title", "New title"));
+        assertEquals("true", renamed.getMessage());
+        assertEquals("New title", shadowOf(dialog).getTitle().toString());
+        assertEquals(2, dialog.getListView().getAdapter().getCount());
+    }
+
+    @Test
+    public void alertTakesANewMessage() throws JSONException {
+        this.harness.call("alert", "Message", "Title", "OK", new JSONObject().put("id", "note"));
+        this.harness.idle();
+        AlertDialog dialog = this.harness.showing();
+        assertNotNull(dialog);
+
+        assertEquals("true", update("note", new JSONObject().put("message", "Changed")).getMessage());
+        assertEquals("Changed", shadowOf(dialog).getMessage().toString());
+    }
+}
@@ -0,0 +1,213 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaInterface;
+import org.apache.cordova.CordovaPreferences;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.robolectric.Robolectric;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.shadows.ShadowAccessibilityManager;
+import org.robolectric.shadows.ShadowAlertDialog;
+import org.robolectric.shadows.ShadowDialog;
+import org.robolectric.shadows.ShadowWindowManagerImpl;
+import org.robolectric.util.Scheduler;
+
+import android.app.Activity;
+import android.app.AlertDialog;
+import android.content.Context;
+import android.view.View;
+import android.widget.Button;
+
+/**
+ * Runs the plugin inside Robolectric the way Cordova would: a live activity, a
+ * thread pool, config.xml preferences and a web view that records results.
+ *
+ * The main looper is paused, so anything posted to the UI thread, from any
+ * thread, waits until idle() runs it on the calling thread. Bridge calls can
+ * then come from many threads while one thread plays the UI thread.
+ */
+class PluginHarness {
+
+    final FakeWebView webView = new FakeWebView();
+    final CordovaPreferences preferences = new CordovaPreferences();
+    final ExecutorService threadPool = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "cordova-pool-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    final CordovaInterface cordova = new CordovaInterface() {
+        public Activity getActivity() {
+            return controller.get();
+        }
+
+        public Context getContext() {
+            return controller.get();
+        }
+
+        public Object onMessage(String id, Object data) {
+            return null;
+        }
+
+        public ExecutorService getThreadPool() {
+            return threadPool;
+        }
+    };
+
+    private final Scheduler ui = Robolectric.getForegroundThreadScheduler();
+    private final AtomicInteger nextCallbackId = new AtomicInteger();
+    private volatile ActivityController<Activity> controller;
+    Notification plugin;
+
+    PluginHarness() {
+        this.ui.pause();
+        this.controller = Robolectric.buildActivity(Activity.class).setup();
+    }
+
+    /**
+     * Creates and initializes the plugin with the preferences set so far.
+     */
+    Notification start() {
+        this.plugin = new Notification();
+        this.plugin.privateInitialize("Notification", this.cordova, this.webView, this.preferences);
+        idle();
+        return this.plugin;
+    }
+
+    Activity activity() {
+        return this.controller.get();
+    }
+
+    /**
+     * Calls an action like exec() from JavaScript and returns the callback id.
+     */
+    String call(String action, Object... args) throws JSONException {
+        String callbackId = "Notification" + this.nextCallbackId.incrementAndGet();
+        call(action, new JSONArray(Arrays.asList(args)), callbackId);
+        return callbackId;
+    }
+
+    void call(String action, JSONArray args, String callbackId) throws JSONException {
+        if (!this.plugin.execute(action, args, new CallbackContext(callbackId, this.webView))) {
+            throw new IllegalArgumentException("Unknown action " + action);
+        }
+    }
+
+    /**
+     * Runs everything posted to the UI thread that is due.
+     */
+    void idle() {
+        this.ui.advanceBy(0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the dialog most recently shown, if it is still showing.
+     */
+    AlertDialog showing() {
+        AlertDialog dialog = ShadowAlertDialog.getLatestAlertDialog();
+        return dialog != null && dialog.isShowing() ? dialog : null;
+    }
+
+    /**
+     * Presses a button of the visible dialog and runs the resulting UI work.
+     */
+    void press(int which) {
+        AlertDialog dialog = showing();
+        if (dialog == null) {
+            throw new AssertionError("No dialog is showing");
+        }
+        Button button = dialog.getButton(which);
+        if (button == null || button.getVisibility() != View.VISIBLE) {
+            throw new AssertionError("The dialog has no button " + which);
+        }
+        button.performClick();
+        idle();
+    }
+
+    /**
+     * Presses whichever button the visible dialog has, positive first.
+     */
+    void answer() {
+        AlertDialog dialog = showing();
+        if (dialog == null) {
+            throw new AssertionError("No dialog is showing");
+        }
+        int[] order = { AlertDialog.BUTTON_POSITIVE, AlertDialog.BUTTON_NEGATIVE, AlertDialog.BUTTON_NEUTRAL };
+        for (int which : order) {
+            Button button = dialog.getButton(which);
+            if (button != null && button.getVisibility() == View.VISIBLE) {
+                press(which);
+                return;
+            }
+        }
+        throw new AssertionError("The dialog has no buttons");
+    }
+
+    /**
+     * Recreates the activity the way a configuration change does. Cordova
+     * destroys the plugin with the old activity and creates a new one, with the
+     * same preferences, for the new activity.
+     */
+    void rotate() {
+        this.plugin.onPause(false);
+        this.controller.pause().stop();
+        this.plugin.onDestroy();
+        // The framework removes the window of a destroyed activity; Robolectric
+        // leaves it registered. Robolectric also keeps every window and dialog
+        // ever shown, and never drops the accessibility listener of a removed
+        // window. Each of these would keep every old activity alive.
+        Activity old = this.controller.get();
+        old.getWindowManager().removeViewImmediate(old.getWindow().getDecorView());
+        ShadowWindowManagerImpl.reset();
+        ShadowAccessibilityManager.reset();
+        ShadowAlertDialog.reset();
+        ShadowDialog.reset();
+        this.controller.destroy();
+        this.controller = Robolectric.buildActivity(Activity.class).setup();
+        start();
+    }
+
+    /**
+     * Calls an action that answers with an object, such as queueStats or stats,
+     * and returns the answer.
+     */
+    JSONObject query(String action) throws JSONException {
+        String callbackId = call(action);
+        idle();
+        return new JSONObject(this.webView.finalResult(callbackId).getMessage());
+    }
+
+    void shutdown() {
+        this.threadPool.shutdownNow();
+    }
+}
@@ -0,0 +1,108 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.robolectric.Shadows.shadowOf;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import android.app.AlertDialog;
+import android.content.pm.ApplicationInfo;
+import android.view.View;
+import android.widget.ListView;
+import android.widget.TextView;
+
+/**
+ * Runs at API 27, the newest release Robolectric 3.8 has; its only P target is
+ * the first developer preview, which predates PrecomputedText. The rows are
+ * therefore checked as plain text here and measured ahead only on devices.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27, manifest = Config.NONE)
+public class RichMessageTest {
+
+    private PluginHarness harness;
+
+    @Before
+    public void setUp() {
+        // Text direction is only resolved for apps that declare RTL support,
+        // as Cordova apps do.
+        RuntimeEnvironment.application.getApplicationInfo().flags |= ApplicationInfo.FLAG_SUPPORTS_RTL;
+        this.harness = new PluginHarness();
+        this.harness.start();
+    }
+
+    @After
+    public void tearDown() {
+        this.harness.shutdown();
+    }
+
+    @Test
+    public void rowsUseTheDialogThemeAndAnExplicitTextDirection() throws Exception {
+        this.harness.call("alert", "# Heading\n\nSome **bold** text.", "Title", "OK", new JSONObject().put("format", "markdown"));
+        this.harness.idle();
+        AlertDialog dialog = this.harness.showing();
+        assertNotNull(dialog);
+        ListView list = (ListView) shadowOf(dialog).getView();
+        long giveUp = System.currentTimeMillis() + 10000;
+        while (list.getAdapter().getCount() == 0 && System.currentTimeMillis() < giveUp) {
+            Thread.sleep(1);
+            this.harness.idle();
+        }
+        assertEquals(2, list.getAdapter().getCount());
+
+        TextView row = (TextView) list.getAdapter().getView(0, null, list);
+        assertEquals("Heading", row.getText().toString().trim());
+        // PrecomputedText is measured with a detached row, which inherits nothing.
+        assertEquals(View.TEXT_DIRECTION_LOCALE, row.getTextDirection());
+        assertNotSame(this.harness.activity(), row.getContext());
+
+        this.harness.answer();
+        assertEquals("0", this.harness.webView.finalResult("Notification1").getMessage());
+    }
+
+    @Test
+    public void settingAMessageLeavesHashingAndParsingToTheExecutor() {
+        String text = "A message long enough to be worth caching.\n\nSecond paragraph.";
+        CredentialStoreTest.ManualExecutor executor = new CredentialStoreTest.ManualExecutor();
+        for (int shown = 0; shown < 2; shown++) {
+            // The second message is already cached, and still costs the caller nothing.
+            RichMessage rich = RichMessage.prepare("text", text, executor);
+            ListView list = (ListView) rich.createView(RuntimeEnvironment.application);
+            ShadowLooper.idleMainLooper();
+            assertEquals(0, list.getAdapter().getCount());
+            assertEquals(1, executor.shutdownNow().size());
+
+            executor.runAll();
+            ShadowLooper.idleMainLooper();
+            assertEquals(2, list.getAdapter().getCount());
+        }
+    }
+}
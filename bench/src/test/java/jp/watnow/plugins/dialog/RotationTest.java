@@ -0,0 +1,126 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Recreates the activity over and over with a dialog on screen and another
+ * waiting, the way rotating the device does.
+ *
+ * Every dialog must be answered with BUTTON_CANCELLED exactly once, and
+ * neither the old activities, their dialogs nor the old plugin instances may
+ * stay reachable.
+ *
+ * The heap still grows by about 10 KB a cycle: Robolectric never frees its
+ * stand-ins for native drawable and typeface peers, and the fake web view keeps
+ * every result. A leaked activity with its windows costs over 200 KB a cycle,
+ * so the growth bound is set between the two.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27, manifest = Config.NONE)
+public class RotationTest {
+
+    private static final int CYCLES = 1000;
+    private static final int WARM_UP = 100;
+    private static final long MAX_GROWTH_PER_CYCLE = 32 * 1024;
+
+    private PluginHarness harness;
+
+    @Before
+    public void setUp() {
+        this.harness = new PluginHarness();
+        this.harness.start();
+    }
+
+    @After
+    public void tearDown() {
+        this.harness.shutdown();
+    }
+
+    @Test
+    public void rotatingAnswersEveryDialogAndLeaksNothing() throws Exception {
+        List<WeakReference<Object>> gone = new ArrayList<WeakReference<Object>>();
+        long warmHeap = 0;
+        for (int cycle = 0; cycle < CYCLES; cycle++) {
+            String shown = this.harness.call("prompt", "Name?", "Prompt", new JSONArray().put("OK").put("Cancel"), "", "text", new JSONObject());
+            String waiting = this.harness.call("alert", "Waiting " + cycle, "Alert", "OK");
+            this.harness.idle();
+            assertNotNull(this.harness.showing());
+            if (cycle % 100 == 0) {
+                gone.add(new WeakReference<Object>(this.harness.activity()));
+                gone.add(new WeakReference<Object>(this.harness.showing()));
+                gone.add(new WeakReference<Object>(this.harness.plugin));
+            }
+
+            this.harness.rotate();
+
+            assertEquals(1, this.harness.webView.finalCount(shown));
+            assertEquals(DialogRequest.BUTTON_CANCELLED, new JSONObject(this.harness.webView.finalResult(shown).getMessage()).getInt("buttonIndex"));
+            assertEquals(1, this.harness.webView.finalCount(waiting));
+            assertEquals(String.valueOf(DialogRequest.BUTTON_CANCELLED), this.harness.webView.finalResult(waiting).getMessage());
+            assertNull(this.harness.showing());
+            if (cycle == WARM_UP) {
+                warmHeap = usedHeap();
+            }
+        }
+        long growth = usedHeap() - warmHeap;
+        System.out.println(String.format("rotation: %d cycles, heap growth after cycle %d: %d KB, %d B/cycle",
+                CYCLES, WARM_UP, growth / 1024, growth / (CYCLES - WARM_UP)));
+
+        for (WeakReference<Object> reference : gone) {
+            assertNull("Still reachable: " + reference.get(), reference.get());
+        }
+        assertTrue("Heap grew by " + growth + " bytes", growth < (CYCLES - WARM_UP) * MAX_GROWTH_PER_CYCLE);
+    }
+
+    /**
+     * Returns the heap in use once the collector has run until it stops freeing memory.
+     */
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            Thread.sleep(20);
+            long now = runtime.totalMemory() - runtime.freeMemory();
+            if (now >= used) {
+                return now;
+            }
+            used = now;
+        }
+        return used;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Ranking over dictionaries large enough that short prefixes match tens of
+ * thousands of entries.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27, manifest = Config.NONE)
+public class SuggestionIndexTest {
+
+    private static final int ENTRIES = 100000;
+
+    private static JSONObject entry(String text, int weight) throws JSONException {
+        JSONObject entry = new JSONObject();
+        entry.put("text", text);
+        entry.put("weight", weight);
+        return entry;
+    }
+
+    /**
+     * A dictionary of "a00000".."a99999" weighted by position, so the heaviest
+     * entries sort last.
+     */
+    private static SuggestionIndex ascending() throws JSONException {
+        JSONArray entries = new JSONArray();
+        for (int i = 0; i < ENTRIES; i++) {
+            entries.put(entry(String.format("a%05d", i), i));
+        }
+        return SuggestionIndex.build(entries);
+    }
+
+    @Test
+    public void shortPrefixFindsHeaviestEntriesAtTheEndOfTheRun() throws JSONException {
+        SuggestionIndex index = ascending();
+        assertArrayEquals(new String[] { "a99999", "a99998", "a99997" }, index.lookup("A", 3));
+    }
+
+    @Test
+    public void limitAboveThePrecomputedListScansTheRun() throws JSONException {
+        String[] suggestions = ascending().lookup("a", 100);
+        assertEquals(100, suggestions.length);
+        assertEquals("a99999", suggestions[0]);
+        assertEquals("a99900", suggestions[99]);
+    }
+
+    @Test
+    public void longerPrefixRanksOnlyItsRun() throws JSONException {
+        SuggestionIndex index = ascending();
+        assertArrayEquals(new String[] { "a12349", "a12348" }, index.lookup("a1234", 2));
+        assertArrayEquals(new String[] { "a99999" }, index.lookup("a9", 1));
+        assertEquals(0, index.lookup("b", 8).length);
+    }
+
+    @Test
+    public void unweightedEntriesRankShortestFirst() throws JSONException {
+        JSONArray entries = new JSONArray();
+        for (int i = 0; i < ENTRIES; i++) {
+            entries.put("b" + Integer.toString(ENTRIES - i));
+        }
+        entries.put("b");
+        entries.put("bz");
+        assertArrayEquals(new String[] { "b", "b1", "b2", "b3" }, SuggestionIndex.build(entries).lookup("b", 4));
+    }
+}
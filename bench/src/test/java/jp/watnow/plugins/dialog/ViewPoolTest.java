@@ -0,0 +1,56 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.app.Activity;
+import android.text.InputType;
+import android.widget.EditText;
+import android.widget.LinearLayout;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27, manifest = Config.NONE)
+public class ViewPoolTest {
+
+    @Test
+    public void freshAndRecycledInputsHaveTheSameInputType() {
+        Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        ViewPool pool = new ViewPool(1);
+
+        EditText fresh = pool.acquireInput(activity);
+        assertEquals(InputType.TYPE_CLASS_TEXT, fresh.getInputType());
+        fresh.setInputType(InputType.TYPE_CLASS_NUMBER);
+        pool.releaseInput(fresh);
+        EditText recycled = pool.acquireInput(activity);
+        assertSame(fresh, recycled);
+        assertEquals(InputType.TYPE_CLASS_TEXT, recycled.getInputType());
+
+        LinearLayout login = pool.acquireLoginLayout(activity);
+        assertEquals(InputType.TYPE_CLASS_TEXT, ((EditText) login.getChildAt(0)).getInputType());
+        assertEquals(InputType.TYPE_CLASS_TEXT, ((EditText) login.getChildAt(1)).getInputType());
+    }
+}
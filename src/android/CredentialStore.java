@@ -0,0 +1,375 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import android.annotation.TargetApi;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import android.util.Base64;
+import android.util.Log;
+
+/**
+ * The last credentials entered in a login dialog, kept encrypted on the device
+ * so the next login dialog can be prefilled without asking JavaScript for them.
+ *
+ * Each account is stored in SharedPreferences as AES/GCM ciphertext, with the
+ * account name as associated data so entries cannot be swapped. The key comes
+ * from a KeyProvider: on the device, an AndroidKeyStore key that never leaves
+ * the keystore. Encryption and decryption run on the executor. Decrypted
+ * credentials are kept in memory as char arrays for at most the TTL, after
+ * which a timer overwrites and drops them, as does wipe(), which the plugin
+ * calls in onPause.
+ */
+class CredentialStore {
+
+    public static final long DEFAULT_TTL = 5 * 60 * 1000;
+    public static final String PREFERENCES_NAME = "jp.watnow.plugins.dialog.credentials";
+
+    private static final String LOG_TAG = "DialogPlugin";
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int TAG_BITS = 128;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Supplies the encryption key. Anything but the device keystore is meant
+     * for running the store off the device.
+     */
+    interface KeyProvider {
+        SecretKey getKey() throws GeneralSecurityException;
+    }
+
+    /**
+     * Receives loaded credentials on the UI thread. The arrays belong to the
+     * listener, which should overwrite them once it has copied them.
+     */
+    interface Listener {
+        void onLoaded(char[] username, char[] password);
+    }
+
+    /**
+     * A 256-bit AES key generated in and used through the AndroidKeyStore. API 23+.
+     */
+    @TargetApi(Build.VERSION_CODES.M)
+    static class KeystoreKeyProvider implements KeyProvider {
+        private static final String ANDROID_KEY_STORE = "AndroidKeyStore";
+        private static final String KEY_ALIAS = "jp.watnow.plugins.dialog.credentials";
+
+        private SecretKey key;
+
+        public synchronized SecretKey getKey() throws GeneralSecurityException {
+            if (this.key != null) {
+                return this.key;
+            }
+            KeyStore store = KeyStore.getInstance(ANDROID_KEY_STORE);
+            try {
+                store.load(null);
+            } catch (IOException e) {
+                throw new GeneralSecurityException(e);
+            }
+            Key stored = store.getKey(KEY_ALIAS, null);
+            if (stored instanceof SecretKey) {
+                this.key = (SecretKey) stored;
+            } else {
+                KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, ANDROID_KEY_STORE);
+                generator.init(new KeyGenParameterSpec.Builder(KEY_ALIAS, KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                        .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                        .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                        .setKeySize(256)
+                        .build());
+                this.key = generator.generateKey();
+            }
+            return this.key;
+        }
+    }
+
+    /**
+     * Decrypted credentials of one account.
+     */
+    private static class Entry {
+        final char[] username;
+        final char[] password;
+        final long expiresAt;
+
+        Entry(char[] username, char[] password, long expiresAt) {
+            this.username = username;
+            this.password = password;
+            this.expiresAt = expiresAt;
+        }
+
+        void wipe() {
+            Arrays.fill(this.username, '\0');
+            Arrays.fill(this.password, '\0');
+        }
+    }
+
+    private final SharedPreferences preferences;
+    private final KeyProvider keys;
+    private final ExecutorService executor;
+    private final long ttl;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final HashMap<String, Entry> cache = new HashMap<String, Entry>();
+    private final HashMap<String, Object> pendingWrites = new HashMap<String, Object>();
+    private final Object expiryToken = new Object();
+    private int epoch = 0;
+
+    /**
+     * @param preferences       Where the ciphertext is kept
+     * @param keys              The key source, or null where there is none; the store
+     *                          then keeps and prefills nothing
+     * @param executor          Where encryption and decryption run
+     * @param ttl               How long decrypted credentials stay in memory, in ms
+     */
+    CredentialStore(SharedPreferences preferences, KeyProvider keys, ExecutorService executor, long ttl) {
+        this.preferences = preferences;
+        this.keys = keys;
+        this.executor = executor;
+        this.ttl = ttl > 0 ? ttl : DEFAULT_TTL;
+    }
+
+    /**
+     * Returns the keystore key provider where the platform has one, or null.
+     */
+    static KeyProvider deviceKeys() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? new KeystoreKeyProvider() : null;
+    }
+
+    /**
+     * Hands the stored credentials of an account to the listener: at once when
+     * they are still in memory, otherwise after decrypting them on the executor.
+     * The listener is not called when nothing is stored or decryption fails.
+     * UI thread only.
+     */
+    void load(final String account, final Listener listener) {
+        final int loadEpoch;
+        char[] username = null;
+        char[] password = null;
+        synchronized (this) {
+            Entry entry = cached(account);
+            if (entry != null) {
+                username = entry.username.clone();
+                password = entry.password.clone();
+            }
+            loadEpoch = this.epoch;
+        }
+        if (username != null) {
+            listener.onLoaded(username, password);
+            return;
+        }
+        if (this.keys == null) {
+            return;
+        }
+        this.executor.execute(new Runnable() {
+            public void run() {
+                final Entry entry = decrypt(account);
+                if (entry == null) {
+                    return;
+                }
+                synchronized (CredentialStore.this) {
+                    if (epoch != loadEpoch) {
+                        // Wiped or replaced while decrypting.
+                        entry.wipe();
+                        return;
+                    }
+                    cache(account, entry);
+                }
+                handler.post(new Runnable() {
+                    public void run() {
+                        listener.onLoaded(entry.username.clone(), entry.password.clone());
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Encrypts and stores the credentials of an account on the executor,
+     * replacing earlier ones. A later save or forget of the account made
+     * before the write wins over it.
+     */
+    void save(final String account, final String username, final String password) {
+        if (this.keys == null) {
+            return;
+        }
+        final Object write = new Object();
+        synchronized (this) {
+            this.epoch++;
+            cache(account, new Entry(username.toCharArray(), password.toCharArray(), SystemClock.elapsedRealtime() + this.ttl));
+            this.pendingWrites.put(account, write);
+        }
+        this.executor.execute(new Runnable() {
+            public void run() {
+                byte[] plain = (username + '\u0000' + password).getBytes(UTF_8);
+                try {
+                    Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+                    cipher.init(Cipher.ENCRYPT_MODE, keys.getKey());
+                    cipher.updateAAD(account.getBytes(UTF_8));
+                    byte[] iv = cipher.getIV();
+                    byte[] sealed = cipher.doFinal(plain);
+                    byte[] stored = new byte[1 + iv.length + sealed.length];
+                    stored[0] = (byte) iv.length;
+                    System.arraycopy(iv, 0, stored, 1, iv.length);
+                    System.arraycopy(sealed, 0, stored, 1 + iv.length, sealed.length);
+                    String encoded = Base64.encodeToString(stored, Base64.NO_WRAP);
+                    synchronized (CredentialStore.this) {
+                        if (pendingWrites.get(account) != write) {
+                            return;
+                        }
+                        pendingWrites.remove(account);
+                        preferences.edit().putString(account, encoded).apply();
+                    }
+                } catch (GeneralSecurityException e) {
+                    Log.w(LOG_TAG, "Unable to store credentials", e);
+                } finally {
+                    Arrays.fill(plain, (byte) 0);
+                }
+            }
+        });
+    }
+
+    /**
+     * Removes the stored and cached credentials of an account.
+     */
+    void forget(String account) {
+        synchronized (this) {
+            this.epoch++;
+            this.pendingWrites.remove(account);
+            Entry old = this.cache.remove(account);
+            if (old != null) {
+                old.wipe();
+            }
+            this.preferences.edit().remove(account).apply();
+        }
+    }
+
+    /**
+     * Overwrites and drops every decrypted credential. The stored ciphertext stays.
+     */
+    synchronized void wipe() {
+        this.epoch++;
+        for (Entry entry : this.cache.values()) {
+            entry.wipe();
+        }
+        this.cache.clear();
+        this.handler.removeCallbacksAndMessages(this.expiryToken);
+    }
+
+    /**
+     * Keeps decrypted credentials in memory and arranges for them to be wiped
+     * when the TTL passes. Call with the lock held.
+     */
+    private void cache(final String account, final Entry entry) {
+        Entry old = this.cache.put(account, entry);
+        if (old != null) {
+            old.wipe();
+        }
+        this.handler.postAtTime(new Runnable() {
+            public void run() {
+                synchronized (CredentialStore.this) {
+                    if (cache.get(account) == entry) {
+                        cache.remove(account);
+                        entry.wipe();
+                    }
+                }
+            }
+        }, this.expiryToken, SystemClock.uptimeMillis() + this.ttl);
+    }
+
+    /**
+     * Returns the cached credentials of an account, or null. The expiry is
+     * checked here as well, since the timer does not run while the device
+     * sleeps. Call with the lock held.
+     */
+    private Entry cached(String account) {
+        Entry entry = this.cache.get(account);
+        if (entry != null && SystemClock.elapsedRealtime() >= entry.expiresAt) {
+            this.cache.remove(account);
+            entry.wipe();
+            entry = null;
+        }
+        return entry;
+    }
+
+    /**
+     * Decrypts the stored credentials of an account. An entry that does not
+     * decrypt, e.g. because the key was invalidated, is removed.
+     */
+    private Entry decrypt(String account) {
+        String stored = this.preferences.getString(account, null);
+        if (stored == null) {
+            return null;
+        }
+        byte[] plain = null;
+        char[] chars = null;
+        try {
+            byte[] bytes = Base64.decode(stored, Base64.NO_WRAP);
+            int ivLength = bytes[0];
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.DECRYPT_MODE, this.keys.getKey(), new GCMParameterSpec(TAG_BITS, bytes, 1, ivLength));
+            cipher.updateAAD(account.getBytes(UTF_8));
+            plain = cipher.doFinal(bytes, 1 + ivLength, bytes.length - 1 - ivLength);
+            CharBuffer decoded = UTF_8.decode(ByteBuffer.wrap(plain));
+            chars = new char[decoded.remaining()];
+            decoded.get(chars);
+            Arrays.fill(decoded.array(), '\0');
+            int split = 0;
+            while (split < chars.length && chars[split] != '\0') {
+                split++;
+            }
+            char[] username = Arrays.copyOfRange(chars, 0, split);
+            char[] password = Arrays.copyOfRange(chars, Math.min(split + 1, chars.length), chars.length);
+            return new Entry(username, password, SystemClock.elapsedRealtime() + this.ttl);
+        } catch (GeneralSecurityException e) {
+            Log.w(LOG_TAG, "Unable to read stored credentials; removing them", e);
+            this.preferences.edit().remove(account).apply();
+            return null;
+        } catch (RuntimeException e) {
+            Log.w(LOG_TAG, "Unable to read stored credentials; removing them", e);
+            this.preferences.edit().remove(account).apply();
+            return null;
+        } finally {
+            if (plain != null) {
+                Arrays.fill(plain, (byte) 0);
+            }
+            if (chars != null) {
+                Arrays.fill(chars, '\0');
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.annotation.SuppressLint;
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * Latency histograms for each dialog action, broken down by phase:
+ *
+ *     dispatch    execute() entry to the show runnable starting on the UI thread
+ *     show        show runnable start to show() returning
+ *     respond     dialog shown to the user's response
+ *     deliver     response handed to the callback to sendPluginResult returning
+ *
+ * Recording never takes a lock, so it is safe on the UI thread and the bridge
+ * thread at the same time. Also emits android.os.Trace sections for systrace
+ * and Perfetto where the platform has them.
+ */
+class DialogMetrics {
+
+    public static final int DISPATCH = 0;
+    public static final int SHOW = 1;
+    public static final int RESPOND = 2;
+    public static final int DELIVER = 3;
+
+    private static final String[] PHASES = { "dispatch", "show", "respond", "deliver" };
+    private static final boolean HAS_TRACE = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+
+    private final ConcurrentHashMap<String, Histogram[]> actions = new ConcurrentHashMap<String, Histogram[]>();
+
+    /**
+     * Records the duration of one phase of a dialog.
+     *
+     * @param action    The dialog action
+     * @param phase     One of DISPATCH, SHOW, RESPOND or DELIVER
+     * @param nanos     The duration in nanoseconds
+     */
+    void record(String action, int phase, long nanos) {
+        Histogram[] histograms = this.actions.get(action);
+        if (histograms == null) {
+            Histogram[] created = new Histogram[PHASES.length];
+            for (int i = 0; i < created.length; i++) {
+                created[i] = new Histogram();
+            }
+            histograms = this.actions.putIfAbsent(action, created);
+            if (histograms == null) {
+                histograms = created;
+            }
+        }
+        histograms[phase].record(nanos);
+    }
+
+    void reset() {
+        for (Histogram[] histograms : this.actions.values()) {
+            for (Histogram histogram : histograms) {
+                histogram.reset();
+            }
+        }
+    }
+
+    /**
+     * Returns {action: {phase: {count, meanMicros, maxMicros, p50Micros, p90Micros, p99Micros, buckets}}}.
+     */
+    JSONObject snapshot() throws JSONException {
+        JSONObject snapshot = new JSONObject();
+        for (Map.Entry<String, Histogram[]> entry : this.actions.entrySet()) {
+            JSONObject phases = new JSONObject();
+            for (int i = 0; i < PHASES.length; i++) {
+                phases.put(PHASES[i], entry.getValue()[i].snapshot());
+            }
+            snapshot.put(entry.getKey(), phases);
+        }
+        return snapshot;
+    }
+
+    @SuppressLint("NewApi")
+    static void beginSection(String name) {
+        if (HAS_TRACE) {
+            Trace.beginSection(name);
+        }
+    }
+
+    @SuppressLint("NewApi")
+    static void endSection() {
+        if (HAS_TRACE) {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * Power-of-two histogram in microseconds. Bucket n counts durations below
+     * 2^n microseconds that did not fit bucket n - 1; the last bucket is open ended.
+     */
+    static class Histogram {
+
+        private static final int BUCKETS = 32;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalMicros = new AtomicLong();
+        private final AtomicLong maxMicros = new AtomicLong();
+
+        void record(long nanos) {
+            long micros = Math.max(nanos / 1000, 0);
+            int bucket = micros == 0 ? 0 : Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+            this.buckets.incrementAndGet(bucket);
+            this.count.incrementAndGet();
+            this.totalMicros.addAndGet(micros);
+            long max = this.maxMicros.get();
+            while (micros > max && !this.maxMicros.compareAndSet(max, micros)) {
+                max = this.maxMicros.get();
+            }
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                this.buckets.set(i, 0);
+            }
+            this.count.set(0);
+            this.totalMicros.set(0);
+            this.maxMicros.set(0);
+        }
+
+        JSONObject snapshot() throws JSONException {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = this.buckets.get(i);
+                total += counts[i];
+            }
+            JSONArray buckets = new JSONArray();
+            for (long bucketCount : counts) {
+                buckets.put(bucketCount);
+            }
+            JSONObject snapshot = new JSONObject();
+            snapshot.put("count", total);
+            snapshot.put("meanMicros", total == 0 ? 0 : this.totalMicros.get() / total);
+            snapshot.put("maxMicros", this.maxMicros.get());
+            snapshot.put("p50Micros", percentile(counts, total, 0.50));
+            snapshot.put("p90Micros", percentile(counts, total, 0.90));
+            snapshot.put("p99Micros", percentile(counts, total, 0.99));
+            snapshot.put("buckets", buckets);
+            return snapshot;
+        }
+
+        /**
+         * Upper bound of the bucket holding the given fraction of samples.
+         */
+        private static long percentile(long[] counts, long total, double fraction) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * fraction);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return 1L << i;
+                }
+            }
+            return 1L << (counts.length - 1);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import java.util.ArrayList;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.app.AlertDialog;
+
+/**
+ * A dialog that is waiting for, or currently holding, its turn on screen.
+ *
+ * The request is handed to the dialog builders in place of the caller's
+ * CallbackContext. Every result sent through it is delivered to all callers
+ * that were coalesced into this request, and the first final result tells
+ * the scheduler that the next dialog may be shown.
+ *
+ * While on screen the request holds its dialog so the scheduler can close it.
+ * The reference is dropped as soon as the request is answered, so an answered
+ * request never keeps the dialog or its activity alive.
+ */
+class DialogRequest extends CallbackContext {
+
+    public static final int PRIORITY_NORMAL = 0;
+
+    /** buttonIndex of a dialog that was closed because its timeout passed. */
+    public static final int BUTTON_TIMEOUT = -1;
+    /** buttonIndex of a request dropped to make room under the evict-oldest policy. */
+    public static final int BUTTON_EVICTED = -2;
+    /** buttonIndex of a dialog closed or unqueued with dismiss or dismissAll, or by activity teardown. */
+    public static final int BUTTON_CANCELLED = -3;
+
+    final String action;
+    final String key;
+    int priority;
+    long sequence;
+    long enqueuedAt;
+    Runnable show;
+    boolean compact = false;
+    long timeout = 0;
+    long deadline = 0;
+    InputValidator[] validators = null;
+    String suggestions = null;
+    int suggestionLimit = SuggestionIndex.DEFAULT_LIMIT;
+    String format = null;
+    RichMessage richMessage = null;
+    String credentials = null;
+    /** Runs once the request is answered, however it was closed. */
+    Runnable whenResolved = null;
+    volatile String title = null;
+    volatile String message = null;
+    final long createdAt = System.nanoTime();
+    volatile long shownAt = 0;
+
+    private final DialogScheduler scheduler;
+    private final ArrayList<CallbackContext> waiters = new ArrayList<CallbackContext>(1);
+    private final ArrayList<String> ids = new ArrayList<String>(1);
+    private boolean resolved = false;
+
+    private AlertDialog dialog = null;
+
+    /**
+     * @param scheduler         The scheduler this request is queued on.
+     * @param action            The plugin action that created the dialog.
+     * @param key               Coalescing key, or null if the request must never be merged.
+     * @param priority          Higher priorities are shown first.
+     * @param callbackContext   The callback of the caller that created the request.
+     * @param webView           The web view results are sent to.
+     */
+    DialogRequest(DialogScheduler scheduler, String action, String key, int priority, CallbackContext callbackContext, CordovaWebView webView) {
+        super(callbackContext.getCallbackId(), webView);
+        this.scheduler = scheduler;
+        this.action = action;
+        this.key = key;
+        this.priority = priority;
+        this.waiters.add(callbackContext);
+    }
+
+    /**
+     * Merges another request into this one so its callers get the same response.
+     */
+    void merge(DialogRequest other) {
+        CallbackContext[] callers;
+        String[] otherIds;
+        synchronized (other) {
+            callers = other.waiters.toArray(new CallbackContext[other.waiters.size()]);
+            otherIds = other.ids.toArray(new String[other.ids.size()]);
+        }
+        synchronized (this) {
+            for (CallbackContext caller : callers) {
+                this.waiters.add(caller);
+            }
+            for (String id : otherIds) {
+                this.ids.add(id);
+            }
+        }
+    }
+
+    /**
+     * Adds a JavaScript dialog id that dismiss and update can refer to this request by.
+     */
+    synchronized void addId(String id) {
+        this.ids.add(id);
+    }
+
+    synchronized String[] ids() {
+        return this.ids.toArray(new String[this.ids.size()]);
+    }
+
+    synchronized boolean isResolved() {
+        return this.resolved;
+    }
+
+    //--------------------------------------------------------------------------
+    // UI THREAD ONLY
+    //--------------------------------------------------------------------------
+
+    /**
+     * Records the dialog that is now showing this request.
+     */
+    void attach(AlertDialog dialog) {
+        this.dialog = dialog;
+    }
+
+    AlertDialog dialog() {
+        return this.dialog;
+    }
+
+    /**
+     * Encodes a prompt, list or login response.
+     *
+     * By default this is the object {buttonIndex, input1, input2, selectedIndex}
+     * with absent values left out. Compact requests get a multipart message of the
+     * same four values in that order instead, with absent values sent as null, so
+     * no JSONObject is built or serialized for the response.
+     *
+     * @param buttonIndex       Index of the button pressed, 0 when dismissed
+     * @param input1            First input text or null
+     * @param input2            Second input text or null
+     * @param selectedIndex     Selected list row or -1
+     */
+    PluginResult result(int buttonIndex, String input1, String input2, int selectedIndex) {
+        if (this.compact) {
+            ArrayList<PluginResult> parts = new ArrayList<PluginResult>(4);
+            parts.add(new PluginResult(PluginResult.Status.OK, buttonIndex));
+            parts.add(new PluginResult(PluginResult.Status.OK, input1));
+            parts.add(new PluginResult(PluginResult.Status.OK, input2));
+            parts.add(selectedIndex < 0 ? new PluginResult(PluginResult.Status.OK, (String) null) : new PluginResult(PluginResult.Status.OK, selectedIndex));
+            return new PluginResult(PluginResult.Status.OK, parts);
+        }
+        JSONObject result = new JSONObject();
+        try {
+            result.put("buttonIndex", buttonIndex);
+            if (input1 != null) {
+                result.put("input1", input1);
+            }
+            if (input2 != null) {
+                result.put("input2", input2);
+            }
+            if (selectedIndex >= 0) {
+                result.put("selectedIndex", selectedIndex);
+            }
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return new PluginResult(PluginResult.Status.OK, result);
+    }
+
+    /**
+     * Encodes a multiList response as {buttonIndex, selectedIndexes}. It is
+     * always an object; the compact encoding has no slot for the selection.
+     *
+     * @param buttonIndex       Index of the button pressed, 0 when dismissed
+     * @param selectedIndexes   Indexes of the checked rows
+     */
+    PluginResult selectionResult(int buttonIndex, int[] selectedIndexes) {
+        JSONObject result = new JSONObject();
+        JSONArray selected = new JSONArray();
+        for (int index : selectedIndexes) {
+            selected.put(index);
+        }
+        try {
+            result.put("buttonIndex", buttonIndex);
+            result.put("selectedIndexes", selected);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return new PluginResult(PluginResult.Status.OK, result);
+    }
+
+    /**
+     * Encodes a response for a dialog closed by the plugin rather than by a
+     * button, in the same shape the action normally answers with.
+     */
+    PluginResult closedResult(int buttonIndex) {
+        if (this.action.equals("alert") || this.action.equals("confirm")) {
+            return new PluginResult(PluginResult.Status.OK, buttonIndex);
+        }
+        if (this.action.equals("multiList")) {
+            return selectionResult(buttonIndex, new int[0]);
+        }
+        return result(buttonIndex, null, null, -1);
+    }
+
+    @Override
+    public void sendPluginResult(PluginResult pluginResult) {
+        CallbackContext[] targets;
+        synchronized (this) {
+            if (this.resolved) {
+                return;
+            }
+            if (!pluginResult.getKeepCallback()) {
+                this.resolved = true;
+            }
+            targets = this.waiters.toArray(new CallbackContext[this.waiters.size()]);
+        }
+        DialogMetrics metrics = this.scheduler.metrics;
+        long start = System.nanoTime();
+        if (!pluginResult.getKeepCallback() && this.shownAt != 0) {
+            metrics.record(this.action, DialogMetrics.RESPOND, start - this.shownAt);
+        }
+        DialogMetrics.beginSection("Dialog result " + this.action);
+        try {
+            for (CallbackContext target : targets) {
+                target.sendPluginResult(pluginResult);
+            }
+        } finally {
+            DialogMetrics.endSection();
+        }
+        metrics.record(this.action, DialogMetrics.DELIVER, System.nanoTime() - start);
+        if (!pluginResult.getKeepCallback()) {
+            this.dialog = null;
+            if (this.whenResolved != null) {
+                this.whenResolved.run();
+            }
+            this.scheduler.finished(this);
+        }
+    }
+}
@@ -0,0 +1,412 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+import org.apache.cordova.CordovaInterface;
+import org.apache.cordova.PluginResult;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.app.AlertDialog;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Shows dialogs one at a time.
+ *
+ * Requests wait in a bounded queue ordered by priority and then by arrival.
+ * A request identical to one that is still waiting is not queued again;
+ * its caller is attached to the waiting request and gets the same response,
+ * and the waiting request moves up to the higher of the two priorities.
+ *
+ * The number of outstanding requests, waiting or on screen, is capped. Past the
+ * cap a new request is either rejected or makes room by evicting the oldest
+ * waiting one. Requests with a timeout are closed by the watchdog when it passes.
+ * Requests opened with a JavaScript id can be cancelled by that id.
+ *
+ * Cordova drops the plugin and its web view together with the activity, so
+ * nothing could show or answer a request after that. destroy() answers every
+ * unanswered request as cancelled instead of leaving its caller waiting.
+ */
+class DialogScheduler implements DialogWatchdog.Listener {
+
+    private static final String LOG_TAG = "DialogPlugin";
+
+    public static final int DEFAULT_CAPACITY = 32;
+
+    private static final Comparator<DialogRequest> ORDER = new Comparator<DialogRequest>() {
+        public int compare(DialogRequest a, DialogRequest b) {
+            if (a.priority != b.priority) {
+                return a.priority > b.priority ? -1 : 1;
+            }
+            return a.sequence < b.sequence ? -1 : (a.sequence == b.sequence ? 0 : 1);
+        }
+    };
+
+    final DialogMetrics metrics;
+
+    private final CordovaInterface cordova;
+    private final DialogWatchdog watchdog = new DialogWatchdog(this);
+    private final int capacity;
+    private final boolean evictOldest;
+    private final PriorityQueue<DialogRequest> pending;
+    private final HashMap<String, DialogRequest> pendingByKey = new HashMap<String, DialogRequest>();
+    private final HashMap<String, DialogRequest> byId = new HashMap<String, DialogRequest>();
+    private DialogRequest visible = null;
+    private long nextSequence = 0;
+    private boolean destroyed = false;
+
+    private long submitted = 0;
+    private long coalesced = 0;
+    private long rejected = 0;
+    private long evicted = 0;
+    private long timedOut = 0;
+    private long cancelled = 0;
+    private long shown = 0;
+    private int maxDepth = 0;
+    private long totalWaitMillis = 0;
+    private long maxWaitMillis = 0;
+
+    /**
+     * @param cordova           The Cordova interface
+     * @param capacity          Maximum number of outstanding requests
+     * @param evictOldest       Whether a full queue evicts its oldest waiting request
+     *                          instead of rejecting the new one
+     * @param metrics           Where latencies are recorded
+     */
+    DialogScheduler(CordovaInterface cordova, int capacity, boolean evictOldest, DialogMetrics metrics) {
+        this.cordova = cordova;
+        this.metrics = metrics;
+        this.evictOldest = evictOldest;
+        this.capacity = capacity > 0 ? capacity : DEFAULT_CAPACITY;
+        this.pending = new PriorityQueue<DialogRequest>(this.capacity, ORDER);
+    }
+
+    /**
+     * Queues a dialog. The runnable builds and shows the dialog on the UI thread
+     * and must eventually send a final result through the request.
+     */
+    void submit(DialogRequest request, Runnable show) {
+        boolean full = false;
+        DialogRequest victim = null;
+        synchronized (this) {
+            this.submitted++;
+            if (this.destroyed) {
+                this.cancelled++;
+                full = true;
+            }
+            DialogRequest twin = full || request.key == null ? null : this.pendingByKey.get(request.key);
+            if (twin != null) {
+                twin.merge(request);
+                if (request.priority > twin.priority) {
+                    // The heap does not notice a changed key; re-insert the twin.
+                    this.pending.remove(twin);
+                    twin.priority = request.priority;
+                    this.pending.add(twin);
+                }
+                for (String id : request.ids()) {
+                    this.byId.put(id, twin);
+                }
+                this.coalesced++;
+                return;
+            }
+            int outstanding = this.pending.size() + (this.visible != null ? 1 : 0);
+            if (!full && outstanding >= this.capacity) {
+                victim = this.evictOldest ? oldestPending() : null;
+                if (victim != null) {
+                    removePending(victim);
+                    this.evicted++;
+                } else {
+                    this.rejected++;
+                    full = true;
+                }
+            }
+            if (!full) {
+                request.show = show;
+                for (String id : request.ids()) {
+                    this.byId.put(id, request);
+                }
+                request.sequence = this.nextSequence++;
+                request.enqueuedAt = SystemClock.uptimeMillis();
+                this.pending.add(request);
+                if (request.key != null) {
+                    this.pendingByKey.put(request.key, request);
+                }
+                if (this.pending.size() > this.maxDepth) {
+                    this.maxDepth = this.pending.size();
+                }
+                if (request.timeout > 0) {
+                    request.deadline = request.enqueuedAt + request.timeout;
+                    this.watchdog.watch(request);
+                }
+            }
+        }
+        if (victim != null) {
+            victim.sendPluginResult(victim.closedResult(DialogRequest.BUTTON_EVICTED));
+        }
+        if (full) {
+            request.sendPluginResult(this.destroyed ? request.closedResult(DialogRequest.BUTTON_CANCELLED)
+                    : new PluginResult(PluginResult.Status.ERROR, "Dialog queue is full"));
+            return;
+        }
+        showNext();
+    }
+
+    /**
+     * Closes a request whose timeout passed, whether it is still waiting or on
+     * screen, and answers it with BUTTON_TIMEOUT. Runs on the UI thread.
+     */
+    public void onTimeout(DialogRequest request) {
+        if (close(request, DialogRequest.BUTTON_TIMEOUT)) {
+            synchronized (this) {
+                this.timedOut++;
+            }
+        }
+    }
+
+    /**
+     * Closes the dialog with the given JavaScript id, or takes it out of the
+     * queue, and answers it with BUTTON_CANCELLED. Runs on the UI thread.
+     *
+     * @return                  False if no unanswered dialog has the id.
+     */
+    boolean cancel(String id) {
+        DialogRequest request;
+        synchronized (this) {
+            request = this.byId.get(id);
+        }
+        if (request == null || !close(request, DialogRequest.BUTTON_CANCELLED)) {
+            return false;
+        }
+        synchronized (this) {
+            this.cancelled++;
+        }
+        return true;
+    }
+
+    /**
+     * Cancels every unanswered dialog, the waiting ones first so none of them
+     * is brought on screen when the visible one goes. Runs on the UI thread.
+     *
+     * @return                  The number of dialogs cancelled.
+     */
+    int cancelAll() {
+        DialogRequest[] waiting;
+        DialogRequest current;
+        synchronized (this) {
+            waiting = this.pending.toArray(new DialogRequest[this.pending.size()]);
+            current = this.visible;
+        }
+        int count = 0;
+        for (DialogRequest request : waiting) {
+            count += close(request, DialogRequest.BUTTON_CANCELLED) ? 1 : 0;
+        }
+        if (current != null && close(current, DialogRequest.BUTTON_CANCELLED)) {
+            count++;
+        }
+        synchronized (this) {
+            this.cancelled += count;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the unanswered request with the given JavaScript id, or null.
+     */
+    synchronized DialogRequest findById(String id) {
+        return this.byId.get(id);
+    }
+
+    /**
+     * Closes a request, whether it is still waiting or on screen, and answers it
+     * with the given buttonIndex. Runs on the UI thread.
+     *
+     * @return                  False if the request was already answered.
+     */
+    private boolean close(DialogRequest request, int buttonIndex) {
+        AlertDialog dialog = null;
+        synchronized (this) {
+            if (this.pending.contains(request)) {
+                removePending(request);
+            } else if (this.visible == request) {
+                dialog = request.dialog();
+            } else {
+                return false;
+            }
+        }
+        if (dialog != null) {
+            dialog.dismiss();
+        }
+        request.sendPluginResult(request.closedResult(buttonIndex));
+        return true;
+    }
+
+    /**
+     * Returns the waiting request that arrived first. Call with the lock held.
+     */
+    private DialogRequest oldestPending() {
+        DialogRequest oldest = null;
+        for (DialogRequest request : this.pending) {
+            if (oldest == null || request.sequence < oldest.sequence) {
+                oldest = request;
+            }
+        }
+        return oldest;
+    }
+
+    /**
+     * Takes a request out of the queue without answering it. Call with the lock held.
+     */
+    private void removePending(DialogRequest request) {
+        this.pending.remove(request);
+        if (request.key != null && this.pendingByKey.get(request.key) == request) {
+            this.pendingByKey.remove(request.key);
+        }
+    }
+
+    /**
+     * Called once the visible dialog has sent its final result.
+     */
+    void finished(DialogRequest request) {
+        this.watchdog.unwatch(request);
+        synchronized (this) {
+            for (String id : request.ids()) {
+                if (this.byId.get(id) == request) {
+                    this.byId.remove(id);
+                }
+            }
+            if (this.visible != request) {
+                return;
+            }
+            this.visible = null;
+        }
+        showNext();
+    }
+
+    private void showNext() {
+        final DialogRequest next;
+        synchronized (this) {
+            if (this.visible != null || this.pending.isEmpty()) {
+                return;
+            }
+            next = this.pending.poll();
+            if (next.key != null) {
+                this.pendingByKey.remove(next.key);
+            }
+            long waited = SystemClock.uptimeMillis() - next.enqueuedAt;
+            this.totalWaitMillis += waited;
+            if (waited > this.maxWaitMillis) {
+                this.maxWaitMillis = waited;
+            }
+            this.shown++;
+            this.visible = next;
+        }
+        show(next);
+    }
+
+    private void show(final DialogRequest next) {
+        this.cordova.getActivity().runOnUiThread(new Runnable() {
+            public void run() {
+                if (next.isResolved()) {
+                    // Timed out or cancelled while this was posted.
+                    return;
+                }
+                if (cordova.getActivity().isFinishing()) {
+                    // The plugin goes away with the activity; see destroy().
+                    if (close(next, DialogRequest.BUTTON_CANCELLED)) {
+                        synchronized (DialogScheduler.this) {
+                            cancelled++;
+                        }
+                    }
+                    return;
+                }
+                long start = System.nanoTime();
+                metrics.record(next.action, DialogMetrics.DISPATCH, start - next.createdAt);
+                DialogMetrics.beginSection("Dialog show " + next.action);
+                try {
+                    next.show.run();
+                    next.shownAt = System.nanoTime();
+                    metrics.record(next.action, DialogMetrics.SHOW, next.shownAt - start);
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Unable to show " + next.action + " dialog", e);
+                    next.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, e.toString()));
+                } finally {
+                    DialogMetrics.endSection();
+                }
+            }
+        });
+    }
+
+    /**
+     * Dismisses the visible dialog, so it does not leak the dying activity, and
+     * answers it and every waiting request with BUTTON_CANCELLED. Requests that
+     * arrive later are answered the same way at once. Called on the UI thread
+     * when the activity is destroyed.
+     */
+    void destroy() {
+        synchronized (this) {
+            this.destroyed = true;
+        }
+        cancelAll();
+    }
+
+    /**
+     * Clears the cumulative counters. Depth and the visible dialog are left alone.
+     */
+    synchronized void resetStats() {
+        this.submitted = 0;
+        this.coalesced = 0;
+        this.rejected = 0;
+        this.evicted = 0;
+        this.timedOut = 0;
+        this.cancelled = 0;
+        this.shown = 0;
+        this.maxDepth = this.pending.size();
+        this.totalWaitMillis = 0;
+        this.maxWaitMillis = 0;
+    }
+
+    /**
+     * Returns the queue counters as a JSON object.
+     */
+    synchronized JSONObject stats() throws JSONException {
+        JSONObject stats = new JSONObject();
+        stats.put("depth", this.pending.size());
+        stats.put("maxDepth", this.maxDepth);
+        stats.put("capacity", this.capacity);
+        stats.put("visible", this.visible != null);
+        stats.put("inFlight", this.pending.size() + (this.visible != null ? 1 : 0));
+        stats.put("submitted", this.submitted);
+        stats.put("coalesced", this.coalesced);
+        stats.put("rejected", this.rejected);
+        stats.put("evicted", this.evicted);
+        stats.put("timedOut", this.timedOut);
+        stats.put("cancelled", this.cancelled);
+        stats.put("overflowPolicy", this.evictOldest ? "evictOldest" : "reject");
+        stats.put("shown", this.shown);
+        stats.put("totalWaitMillis", this.totalWaitMillis);
+        stats.put("maxWaitMillis", this.maxWaitMillis);
+        stats.put("averageWaitMillis", this.shown == 0 ? 0 : this.totalWaitMillis / this.shown);
+        return stats;
+    }
+}
@@ -0,0 +1,196 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A dialog registered once with defineTemplate and shown by id afterwards.
+ *
+ * The arguments are checked against the action's signature when the template
+ * is defined, and every string argument is split around its {0}, {1}, ...
+ * parameters up front. Showing the template then only joins the stored pieces
+ * with the parameters of the call; nothing is parsed or validated again.
+ */
+class DialogTemplate {
+
+    /**
+     * A parameter reference, {0} to {9999}. Anything else in braces, such as a
+     * longer number or one with leading zeros, is plain text.
+     */
+    private static final Pattern PARAMETER = Pattern.compile("\\{(0|[1-9]\\d{0,3})\\}");
+
+    /**
+     * Argument types of each dialog action before its options object:
+     * s for a string, a for an array.
+     */
+    private static final HashMap<String, String> SIGNATURES = new HashMap<String, String>();
+    static {
+        SIGNATURES.put("alert", "sss");
+        SIGNATURES.put("confirm", "ssa");
+        SIGNATURES.put("prompt", "ssass");
+        SIGNATURES.put("list", "sa");
+        SIGNATURES.put("multiList", "saa");
+        SIGNATURES.put("login", "ssaa");
+    }
+
+    final String action;
+    private final Object[] args;
+    private final JSONObject options;
+
+    private DialogTemplate(String action, Object[] args, JSONObject options) {
+        this.action = action;
+        this.args = args;
+        this.options = options;
+    }
+
+    /**
+     * Returns where the options object goes in an action's exec arguments, or -1
+     * if the action is not a dialog action.
+     */
+    static int optionsIndex(String action) {
+        String signature = SIGNATURES.get(action);
+        return signature == null ? -1 : signature.length();
+    }
+
+    /**
+     * Checks and stores a dialog. The compact option is dropped, since callers of
+     * showTemplate always get the default result encoding, and so is id, since
+     * every showing is a dialog of its own.
+     *
+     * @param action            A dialog action
+     * @param args              Its exec arguments, without the options object
+     * @param options           Its options, or null
+     * @throws JSONException    If the action is unknown or the arguments do not fit it
+     */
+    static DialogTemplate compile(String action, JSONArray args, JSONObject options) throws JSONException {
+        String signature = SIGNATURES.get(action);
+        if (signature == null) {
+            throw new JSONException("Unsupported template action: " + action);
+        }
+        if (args.length() != signature.length()) {
+            throw new JSONException(action + " takes " + signature.length() + " arguments");
+        }
+        Object[] compiled = new Object[signature.length()];
+        for (int i = 0; i < compiled.length; i++) {
+            if (signature.charAt(i) == 'a') {
+                compiled[i] = args.getJSONArray(i);
+            } else {
+                compiled[i] = Text.compile(args.getString(i));
+            }
+        }
+        JSONObject stored = new JSONObject();
+        if (options != null) {
+            Iterator<?> keys = options.keys();
+            while (keys.hasNext()) {
+                String key = (String) keys.next();
+                if (!key.equals("compact") && !key.equals("id")) {
+                    stored.put(key, options.get(key));
+                }
+            }
+        }
+        return new DialogTemplate(action, compiled, stored);
+    }
+
+    /**
+     * Returns the exec arguments for one showing, options object included.
+     *
+     * @param params            Values for the {n} parameters, or null
+     * @param overrides         Options replacing those of the template, or null
+     */
+    JSONArray args(JSONArray params, JSONObject overrides) throws JSONException {
+        JSONArray args = new JSONArray();
+        for (Object arg : this.args) {
+            args.put(arg instanceof Text ? ((Text) arg).format(params) : arg);
+        }
+        JSONObject options = this.options;
+        if (overrides != null && overrides.length() > 0) {
+            options = new JSONObject(this.options.toString());
+            Iterator<?> keys = overrides.keys();
+            while (keys.hasNext()) {
+                String key = (String) keys.next();
+                if (!key.equals("compact")) {
+                    options.put(key, overrides.get(key));
+                }
+            }
+        }
+        args.put(options);
+        return args;
+    }
+
+    /**
+     * A string split around its parameters: literals[0], params[indexes[0]],
+     * literals[1], ... literals[n].
+     */
+    private static class Text {
+        private final String[] literals;
+        private final int[] indexes;
+
+        private Text(String[] literals, int[] indexes) {
+            this.literals = literals;
+            this.indexes = indexes;
+        }
+
+        static Text compile(String text) {
+            ArrayList<String> literals = new ArrayList<String>();
+            ArrayList<Integer> indexes = new ArrayList<Integer>();
+            Matcher matcher = PARAMETER.matcher(text);
+            int start = 0;
+            while (matcher.find()) {
+                literals.add(text.substring(start, matcher.start()));
+                indexes.add(Integer.valueOf(matcher.group(1)));
+                start = matcher.end();
+            }
+            literals.add(text.substring(start));
+            int[] packed = new int[indexes.size()];
+            for (int i = 0; i < packed.length; i++) {
+                packed[i] = indexes.get(i);
+            }
+            return new Text(literals.toArray(new String[literals.size()]), packed);
+        }
+
+        /**
+         * Fills in the parameters. A parameter without a value is left as written.
+         */
+        String format(JSONArray params) {
+            if (this.indexes.length == 0) {
+                return this.literals[0];
+            }
+            StringBuilder text = new StringBuilder(this.literals[0]);
+            for (int i = 0; i < this.indexes.length; i++) {
+                int index = this.indexes[i];
+                if (params != null && index < params.length() && !params.isNull(index)) {
+                    text.append(params.opt(index));
+                } else {
+                    text.append('{').append(index).append('}');
+                }
+                text.append(this.literals[i + 1]);
+            }
+            return text.toString();
+        }
+    }
+}
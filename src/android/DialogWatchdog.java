@@ -0,0 +1,104 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * Times out dialogs that are never answered.
+ *
+ * All deadlines share one main-thread Handler: only the earliest deadline has
+ * a posted tick, and each tick expires everything that is due and re-arms for
+ * the next one. No timer or runnable is created per dialog.
+ */
+class DialogWatchdog {
+
+    /**
+     * Receives requests whose deadline has passed, on the UI thread.
+     */
+    interface Listener {
+        void onTimeout(DialogRequest request);
+    }
+
+    private static final Comparator<DialogRequest> BY_DEADLINE = new Comparator<DialogRequest>() {
+        public int compare(DialogRequest a, DialogRequest b) {
+            return a.deadline < b.deadline ? -1 : (a.deadline == b.deadline ? 0 : 1);
+        }
+    };
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final PriorityQueue<DialogRequest> deadlines = new PriorityQueue<DialogRequest>(16, BY_DEADLINE);
+    private final Listener listener;
+    private long armedFor = Long.MAX_VALUE;
+
+    private final Runnable tick = new Runnable() {
+        public void run() {
+            ArrayList<DialogRequest> expired = new ArrayList<DialogRequest>();
+            synchronized (DialogWatchdog.this) {
+                armedFor = Long.MAX_VALUE;
+                long now = SystemClock.uptimeMillis();
+                while (!deadlines.isEmpty() && deadlines.peek().deadline <= now) {
+                    expired.add(deadlines.poll());
+                }
+                arm();
+            }
+            for (DialogRequest request : expired) {
+                listener.onTimeout(request);
+            }
+        }
+    };
+
+    DialogWatchdog(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Starts timing a request whose deadline is set.
+     */
+    synchronized void watch(DialogRequest request) {
+        this.deadlines.add(request);
+        arm();
+    }
+
+    synchronized void unwatch(DialogRequest request) {
+        if (this.deadlines.remove(request) && this.deadlines.isEmpty()) {
+            this.handler.removeCallbacks(this.tick);
+            this.armedFor = Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Makes sure the tick is posted for the earliest deadline. Call with the lock held.
+     */
+    private void arm() {
+        DialogRequest first = this.deadlines.peek();
+        if (first == null || first.deadline >= this.armedFor) {
+            return;
+        }
+        this.handler.removeCallbacks(this.tick);
+        this.handler.postAtTime(this.tick, first.deadline);
+        this.armedFor = first.deadline;
+    }
+}
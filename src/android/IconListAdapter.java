@@ -0,0 +1,179 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import android.content.Context;
+import android.util.TypedValue;
+import android.view.Gravity;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.ImageView;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+/**
+ * List dialog adapter for rows with an optional icon and subtitle.
+ *
+ * Icons come from IconLoader. A recycled row cancels the decode it started for
+ * its previous item, so fast scrolling through a long list only decodes the
+ * rows that stay on screen. Must only be touched on the UI thread.
+ */
+class IconListAdapter extends BaseAdapter {
+
+    private static final int ICON_DP = 40;
+    private static final int PADDING_DP = 12;
+
+    /**
+     * One row: {text, subtitle, icon} with subtitle and icon optional.
+     */
+    static class Row {
+        final String text;
+        final String subtitle;
+        final String icon;
+
+        Row(String text, String subtitle, String icon) {
+            this.text = text;
+            this.subtitle = subtitle;
+            this.icon = icon;
+        }
+    }
+
+    private static class Holder {
+        ImageView icon;
+        TextView text;
+        TextView subtitle;
+        IconLoader.Task task;
+    }
+
+    private final Row[] rows;
+    private final IconLoader loader;
+
+    IconListAdapter(Row[] rows, IconLoader loader) {
+        this.rows = rows;
+        this.loader = loader;
+    }
+
+    /**
+     * Whether the list data has any object rows and so needs this adapter
+     * rather than plain setItems.
+     */
+    static boolean hasRows(JSONArray data) {
+        for (int i = 0; i < data.length(); i++) {
+            if (data.opt(i) instanceof JSONObject) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads list data of strings and {text, subtitle, icon} objects.
+     */
+    static Row[] parse(JSONArray data) {
+        Row[] rows = new Row[data.length()];
+        for (int i = 0; i < rows.length; i++) {
+            JSONObject item = data.optJSONObject(i);
+            if (item == null) {
+                rows[i] = new Row(data.optString(i), null, null);
+            } else {
+                rows[i] = new Row(item.optString("text"), item.optString("subtitle", null), item.optString("icon", null));
+            }
+        }
+        return rows;
+    }
+
+    public int getCount() {
+        return this.rows.length;
+    }
+
+    public Row getItem(int position) {
+        return this.rows[position];
+    }
+
+    public long getItemId(int position) {
+        return position;
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+
+    public View getView(int position, View convertView, ViewGroup parent) {
+        Holder holder;
+        if (convertView == null) {
+            holder = new Holder();
+            convertView = createRow(parent.getContext(), holder);
+            convertView.setTag(holder);
+        } else {
+            holder = (Holder) convertView.getTag();
+            if (holder.task != null) {
+                holder.task.cancel();
+                holder.task = null;
+            }
+        }
+        Row row = this.rows[position];
+        holder.text.setText(row.text);
+        holder.subtitle.setText(row.subtitle);
+        holder.subtitle.setVisibility(row.subtitle == null ? View.GONE : View.VISIBLE);
+        if (row.icon == null) {
+            holder.icon.setImageDrawable(null);
+            holder.icon.setVisibility(View.GONE);
+        } else {
+            holder.icon.setVisibility(View.VISIBLE);
+            holder.task = this.loader.load(row.icon, holder.icon.getLayoutParams().width, holder.icon);
+        }
+        return convertView;
+    }
+
+    private static View createRow(Context context, Holder holder) {
+        int iconSize = dp(context, ICON_DP);
+        int padding = dp(context, PADDING_DP);
+
+        LinearLayout row = new LinearLayout(context);
+        row.setOrientation(LinearLayout.HORIZONTAL);
+        row.setGravity(Gravity.CENTER_VERTICAL);
+        row.setPadding(padding * 2, padding, padding * 2, padding);
+
+        holder.icon = new ImageView(context);
+        holder.icon.setScaleType(ImageView.ScaleType.CENTER_CROP);
+        LinearLayout.LayoutParams iconParams = new LinearLayout.LayoutParams(iconSize, iconSize);
+        iconParams.rightMargin = padding;
+        row.addView(holder.icon, iconParams);
+
+        LinearLayout texts = new LinearLayout(context);
+        texts.setOrientation(LinearLayout.VERTICAL);
+        holder.text = new TextView(context);
+        holder.text.setTextSize(TypedValue.COMPLEX_UNIT_SP, 18);
+        holder.subtitle = new TextView(context);
+        holder.subtitle.setTextSize(TypedValue.COMPLEX_UNIT_SP, 14);
+        texts.addView(holder.text);
+        texts.addView(holder.subtitle);
+        row.addView(texts, new LinearLayout.LayoutParams(0, ViewGroup.LayoutParams.WRAP_CONTENT, 1));
+        return row;
+    }
+
+    private static int dp(Context context, int dp) {
+        return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, dp, context.getResources().getDisplayMetrics());
+    }
+}
@@ -0,0 +1,283 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Base64;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+/**
+ * Loads list row icons off the UI thread into a process-wide memory cache.
+ *
+ * An icon source is a data: URI, a file path (optionally file://) or a path in
+ * the app assets (optionally file:///android_asset/). Icons are downsampled
+ * while decoding to the smallest power-of-two reduction that still covers the
+ * row's icon size, and cached per source and size in an LruCache holding an
+ * eighth of the app's memory class. The cache is shared by every dialog.
+ *
+ * Decodes run on DECODE_THREADS daemon threads of the loader's own rather than
+ * on Cordova's thread pool, which grows a thread per waiting task; a fling
+ * through a long list must not decode dozens of full-size images at once.
+ */
+class IconLoader {
+
+    private static final String LOG_TAG = "DialogPlugin";
+    private static final String ASSET_PREFIX = "file:///android_asset/";
+    private static final String FILE_PREFIX = "file://";
+    private static final int DECODE_THREADS = 2;
+    private static final int MEMORY_CLASS_FRACTION = 8;
+
+    private static IconLoader instance;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(DECODE_THREADS, new ThreadFactory() {
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "DialogPlugin icons");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final AssetManager assets;
+    private final LruCache<String, Bitmap> cache;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong decoded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+
+    private IconLoader(Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        int cacheKb = activityManager.getMemoryClass() * 1024 / MEMORY_CLASS_FRACTION;
+        this.assets = context.getAssets();
+        this.cache = new LruCache<String, Bitmap>(cacheKb) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return Math.max(bitmap.getByteCount() / 1024, 1);
+            }
+        };
+    }
+
+    /**
+     * Returns the process-wide loader, creating it on first use.
+     */
+    static synchronized IconLoader get(Context context) {
+        if (instance == null) {
+            instance = new IconLoader(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the process-wide loader if one was created, or null.
+     */
+    static synchronized IconLoader peek() {
+        return instance;
+    }
+
+    /**
+     * Shows an icon in a view. A cached icon is set right away; otherwise the
+     * view is cleared and the icon decoded in the background. UI thread only.
+     *
+     * @param source            The icon source
+     * @param size              Icon width and height in pixels
+     * @param view              Where to show the icon
+     * @return                  The pending decode, to cancel when the view is
+     *                          recycled, or null if the icon was cached.
+     */
+    Task load(String source, int size, ImageView view) {
+        String key = size + ":" + source;
+        Bitmap bitmap = this.cache.get(key);
+        if (bitmap != null) {
+            this.hits.incrementAndGet();
+            view.setImageBitmap(bitmap);
+            return null;
+        }
+        this.misses.incrementAndGet();
+        view.setImageDrawable(null);
+        Task task = new Task(key, source, size, view);
+        task.future = this.executor.submit(task);
+        return task;
+    }
+
+    /**
+     * Returns {hits, misses, decoded, failed, cancelled, evicted, sizeKb, maxSizeKb}.
+     */
+    JSONObject stats() throws JSONException {
+        JSONObject stats = new JSONObject();
+        stats.put("hits", this.hits.get());
+        stats.put("misses", this.misses.get());
+        stats.put("decoded", this.decoded.get());
+        stats.put("failed", this.failed.get());
+        stats.put("cancelled", this.cancelled.get());
+        stats.put("evicted", this.cache.evictionCount());
+        stats.put("sizeKb", this.cache.size());
+        stats.put("maxSizeKb", this.cache.maxSize());
+        return stats;
+    }
+
+    void resetStats() {
+        this.hits.set(0);
+        this.misses.set(0);
+        this.decoded.set(0);
+        this.failed.set(0);
+        this.cancelled.set(0);
+    }
+
+    /**
+     * Decodes a source to at least size x size pixels, or returns null. The
+     * pixels are not decoded if the task is cancelled after the bounds pass.
+     */
+    private Bitmap decode(String source, int size, Task task) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        if (source.startsWith("data:")) {
+            byte[] data = Base64.decode(source.substring(source.indexOf(',') + 1), Base64.DEFAULT);
+            BitmapFactory.decodeByteArray(data, 0, data.length, options);
+            if (task.isCancelled) {
+                return null;
+            }
+            options.inSampleSize = sampleSize(options, size);
+            options.inJustDecodeBounds = false;
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+        if (source.startsWith(ASSET_PREFIX) || !(source.startsWith("/") || source.startsWith(FILE_PREFIX))) {
+            String path = source.startsWith(ASSET_PREFIX) ? source.substring(ASSET_PREFIX.length()) : source;
+            InputStream bounds = this.assets.open(path);
+            try {
+                BitmapFactory.decodeStream(bounds, null, options);
+            } finally {
+                bounds.close();
+            }
+            if (task.isCancelled) {
+                return null;
+            }
+            options.inSampleSize = sampleSize(options, size);
+            options.inJustDecodeBounds = false;
+            InputStream pixels = this.assets.open(path);
+            try {
+                return BitmapFactory.decodeStream(pixels, null, options);
+            } finally {
+                pixels.close();
+            }
+        }
+        String path = source.startsWith(FILE_PREFIX) ? source.substring(FILE_PREFIX.length()) : source;
+        BitmapFactory.decodeFile(path, options);
+        if (task.isCancelled) {
+            return null;
+        }
+        options.inSampleSize = sampleSize(options, size);
+        options.inJustDecodeBounds = false;
+        return BitmapFactory.decodeFile(path, options);
+    }
+
+    private static int sampleSize(BitmapFactory.Options bounds, int size) {
+        int sample = 1;
+        while (bounds.outWidth / (sample * 2) >= size && bounds.outHeight / (sample * 2) >= size) {
+            sample *= 2;
+        }
+        return sample;
+    }
+
+    /**
+     * One background decode for one row.
+     */
+    class Task implements Runnable {
+
+        private final String key;
+        private final String source;
+        private final int size;
+        private final ImageView view;
+        private volatile boolean isCancelled = false;
+        private Future<?> future;
+
+        Task(String key, String source, int size, ImageView view) {
+            this.key = key;
+            this.source = source;
+            this.size = size;
+            this.view = view;
+        }
+
+        public void run() {
+            if (this.isCancelled) {
+                return;
+            }
+            final Bitmap bitmap;
+            try {
+                bitmap = decode(this.source, this.size, this);
+            } catch (IOException e) {
+                failed.incrementAndGet();
+                Log.w(LOG_TAG, "Unable to load icon " + this.source, e);
+                return;
+            } catch (IllegalArgumentException e) {
+                failed.incrementAndGet();
+                Log.w(LOG_TAG, "Unable to load icon " + this.source, e);
+                return;
+            }
+            if (bitmap == null) {
+                if (this.isCancelled) {
+                    cancelled.incrementAndGet();
+                } else {
+                    failed.incrementAndGet();
+                }
+                return;
+            }
+            decoded.incrementAndGet();
+            cache.put(this.key, bitmap);
+            this.view.post(new Runnable() {
+                public void run() {
+                    if (!isCancelled) {
+                        view.setImageBitmap(bitmap);
+                    }
+                }
+            });
+        }
+
+        /**
+         * Drops the decode if it has not started, stops it after its bounds pass
+         * if it has, and keeps its result, if any, out of the view, which now
+         * shows another row. UI thread only.
+         */
+        void cancel() {
+            if (this.isCancelled) {
+                return;
+            }
+            this.isCancelled = true;
+            if (this.future != null && this.future.cancel(false)) {
+                cancelled.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.app.AlertDialog;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.util.LruCache;
+import android.widget.Button;
+import android.widget.EditText;
+
+/**
+ * A compiled declarative rule for one prompt or login input:
+ *
+ *     {required, minLength, maxLength, pattern, min, max, message}
+ *
+ * pattern must match the whole input; min and max make the input numeric.
+ * message replaces the built-in error text. Specs are compiled once and cached
+ * by their JSON text, so repeated dialogs reuse the compiled pattern.
+ */
+class InputValidator {
+
+    private static final int CACHE_SIZE = 32;
+    private static final long DEBOUNCE_MILLIS = 150;
+
+    private static final LruCache<String, InputValidator> CACHE = new LruCache<String, InputValidator>(CACHE_SIZE);
+
+    private final boolean required;
+    private final int minLength;
+    private final int maxLength;
+    private final Pattern pattern;
+    private final Double min;
+    private final Double max;
+    private final String message;
+
+    private InputValidator(JSONObject spec) throws JSONException {
+        this.required = spec.optBoolean("required", false);
+        this.minLength = spec.optInt("minLength", 0);
+        this.maxLength = spec.optInt("maxLength", Integer.MAX_VALUE);
+        String regex = spec.optString("pattern", null);
+        try {
+            this.pattern = regex == null ? null : Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+            throw new JSONException("Invalid validator pattern: " + regex);
+        }
+        this.min = spec.has("min") ? spec.optDouble("min", Double.NaN) : null;
+        this.max = spec.has("max") ? spec.optDouble("max", Double.NaN) : null;
+        this.message = spec.optString("message", null);
+    }
+
+    /**
+     * Compiles the validators option of a dialog: one spec object, or an array
+     * with one spec (or null) per input.
+     *
+     * @return                  One validator or null per input, or null if there are none.
+     */
+    static InputValidator[] compileAll(Object specs) throws JSONException {
+        if (specs instanceof JSONObject) {
+            return new InputValidator[] { compile((JSONObject) specs) };
+        }
+        if (!(specs instanceof JSONArray)) {
+            return null;
+        }
+        JSONArray array = (JSONArray) specs;
+        InputValidator[] validators = new InputValidator[array.length()];
+        for (int i = 0; i < validators.length; i++) {
+            validators[i] = compile(array.optJSONObject(i));
+        }
+        return validators;
+    }
+
+    static InputValidator compile(JSONObject spec) throws JSONException {
+        if (spec == null) {
+            return null;
+        }
+        String key = spec.toString();
+        InputValidator validator = CACHE.get(key);
+        if (validator == null) {
+            validator = new InputValidator(spec);
+            CACHE.put(key, validator);
+        }
+        return validator;
+    }
+
+    /**
+     * @return                  Null when the text is valid, otherwise the error to show.
+     */
+    String validate(CharSequence text) {
+        int length = text.length();
+        if (length == 0) {
+            return this.required ? error("Required") : null;
+        }
+        if (length < this.minLength) {
+            return error("At least " + this.minLength + " characters");
+        }
+        if (length > this.maxLength) {
+            return error("At most " + this.maxLength + " characters");
+        }
+        if (this.pattern != null && !this.pattern.matcher(text).matches()) {
+            return error("Invalid format");
+        }
+        if (this.min != null || this.max != null) {
+            double value;
+            try {
+                value = Double.parseDouble(text.toString().trim());
+            } catch (NumberFormatException e) {
+                return error("Must be a number");
+            }
+            if ((this.min != null && value < this.min) || (this.max != null && value > this.max)) {
+                return error("Must be between " + (this.min != null ? this.min : "-") + " and " + (this.max != null ? this.max : "-"));
+            }
+        }
+        return null;
+    }
+
+    private String error(String fallback) {
+        return this.message != null ? this.message : fallback;
+    }
+
+    /**
+     * Validates the inputs of a shown dialog as the user types and only enables
+     * its accept button while every input is valid.
+     *
+     * @param dialog            The shown dialog
+     * @param acceptButton      Which button to gate, e.g. DialogInterface.BUTTON_NEGATIVE
+     * @param validators        One validator or null per input
+     * @param inputs            The input views
+     * @return                  The binding to unbind when the dialog goes away, or null if
+     *                          there is nothing to validate.
+     */
+    static Binding bind(AlertDialog dialog, int acceptButton, InputValidator[] validators, EditText... inputs) {
+        if (validators == null || validators.length == 0) {
+            return null;
+        }
+        Binding binding = new Binding(dialog.getButton(acceptButton), validators, inputs);
+        binding.check(false);
+        return binding;
+    }
+
+    /**
+     * Watches the inputs of one dialog. Every change disables the accept button at
+     * once; the rules run after typing pauses, show inline errors and re-enable the
+     * button when everything passes. UI thread only.
+     */
+    static class Binding implements TextWatcher, Runnable {
+
+        private final Handler handler = new Handler(Looper.getMainLooper());
+        private final Button accept;
+        private final InputValidator[] validators;
+        private final EditText[] inputs;
+
+        Binding(Button accept, InputValidator[] validators, EditText[] inputs) {
+            this.accept = accept;
+            this.validators = validators;
+            this.inputs = inputs;
+            for (EditText input : inputs) {
+                input.addTextChangedListener(this);
+            }
+        }
+
+        public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+        }
+
+        public void onTextChanged(CharSequence s, int start, int before, int count) {
+        }
+
+        public void afterTextChanged(Editable s) {
+            if (this.accept != null) {
+                this.accept.setEnabled(false);
+            }
+            this.handler.removeCallbacks(this);
+            this.handler.postDelayed(this, DEBOUNCE_MILLIS);
+        }
+
+        public void run() {
+            check(true);
+        }
+
+        void check(boolean showErrors) {
+            boolean valid = true;
+            for (int i = 0; i < this.inputs.length && i < this.validators.length; i++) {
+                if (this.validators[i] == null) {
+                    continue;
+                }
+                String error = this.validators[i].validate(this.inputs[i].getText());
+                if (showErrors) {
+                    this.inputs[i].setError(error);
+                }
+                valid &= error == null;
+            }
+            if (this.accept != null) {
+                this.accept.setEnabled(valid);
+            }
+        }
+
+        /**
+         * Removes the watchers so pooled input views come back clean.
+         */
+        void unbind() {
+            this.handler.removeCallbacks(this);
+            for (EditText input : this.inputs) {
+                input.removeTextChangedListener(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+/**
+ * List dialog adapter that can grow while the dialog is open.
+ *
+ * Rows are recycled by the ListView, so only the visible rows hold views no
+ * matter how many items have been appended. Must only be touched on the UI thread.
+ */
+class ListItemAdapter extends BaseAdapter {
+
+    private final ArrayList<String> items;
+
+    ListItemAdapter(int capacity) {
+        this.items = new ArrayList<String>(capacity);
+    }
+
+    /**
+     * Adds a page of items to the end of the list.
+     */
+    void append(String[] chunk) {
+        Collections.addAll(this.items, chunk);
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Replaces all items, e.g. with a new set of suggestions.
+     */
+    void replace(String[] items) {
+        this.items.clear();
+        Collections.addAll(this.items, items);
+        notifyDataSetChanged();
+    }
+
+    public int getCount() {
+        return this.items.size();
+    }
+
+    public String getItem(int position) {
+        return this.items.get(position);
+    }
+
+    public long getItemId(int position) {
+        return position;
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+
+    public View getView(int position, View convertView, ViewGroup parent) {
+        TextView row = (TextView) convertView;
+        if (row == null) {
+            row = (TextView) LayoutInflater.from(parent.getContext()).inflate(android.R.layout.select_dialog_item, parent, false);
+        }
+        row.setText(this.items.get(position));
+        return row;
+    }
+}
@@ -0,0 +1,227 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.CheckedTextView;
+
+/**
+ * Adapter for the searchable multi-select list.
+ *
+ * Every row is folded once, when the adapter is built: decomposed, stripped of
+ * combining marks and lower-cased, so accented letters match their plain forms.
+ * A query runs on a background executor and only the newest one is applied; an
+ * older query still running gives up at its next check. When a query extends
+ * the last applied one, only the rows that matched it are searched again.
+ *
+ * Queries from all lists share one background thread, so a burst of typing
+ * never occupies more than a single core. Cordova's thread pool grows a thread
+ * per waiting task, so the plugin keeps this one thread of its own, a daemon
+ * that never holds up the process.
+ *
+ * Checked state belongs to the rows, not to their filtered positions, so it
+ * survives any change of the filter. Apart from filter(), UI thread only.
+ */
+class MultiSelectAdapter extends BaseAdapter {
+
+    private static final Pattern MARKS = Pattern.compile("\\p{Mn}+");
+    private static final int CANCEL_CHECK_INTERVAL = 256;
+    private static final ExecutorService FILTER_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "DialogPlugin filter");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final AtomicInteger generation = new AtomicInteger();
+    private final String[] items;
+    private final String[] folded;
+    private final boolean[] checked;
+    private int[] visible;
+    private volatile Match applied;
+
+    /**
+     * Folds every row, so build it off the UI thread for long lists.
+     *
+     * @param items             The rows
+     * @param selected          Indexes of the rows checked initially
+     */
+    MultiSelectAdapter(String[] items, int[] selected) {
+        this.items = items;
+        this.folded = new String[items.length];
+        this.checked = new boolean[items.length];
+        this.visible = new int[items.length];
+        for (int i = 0; i < items.length; i++) {
+            this.folded[i] = fold(items[i]);
+            this.visible[i] = i;
+        }
+        for (int index : selected) {
+            if (index >= 0 && index < items.length) {
+                this.checked[index] = true;
+            }
+        }
+        this.applied = new Match("", this.visible);
+    }
+
+    /**
+     * Returns the text decomposed, without combining marks and in lower case.
+     */
+    static String fold(CharSequence text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Narrows the rows to those containing the query, on the filter thread.
+     * Any query still running is abandoned. May be called from any thread.
+     */
+    void filter(final String query) {
+        final int current = this.generation.incrementAndGet();
+        FILTER_EXECUTOR.execute(new Runnable() {
+            public void run() {
+                final Match match = search(fold(query), current);
+                if (match == null) {
+                    return;
+                }
+                handler.post(new Runnable() {
+                    public void run() {
+                        if (generation.get() == current) {
+                            visible = match.rows;
+                            applied = match;
+                            notifyDataSetChanged();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @return                  The matching rows, or null if a newer query came in.
+     */
+    private Match search(String query, int current) {
+        Match base = this.applied;
+        int[] candidates = query.startsWith(base.query) ? base.rows : null;
+        int count = candidates != null ? candidates.length : this.items.length;
+        int[] rows = new int[count];
+        int found = 0;
+        for (int i = 0; i < count; i++) {
+            if (i % CANCEL_CHECK_INTERVAL == 0 && this.generation.get() != current) {
+                return null;
+            }
+            int row = candidates != null ? candidates[i] : i;
+            if (query.length() == 0 || this.folded[row].contains(query)) {
+                rows[found++] = row;
+            }
+        }
+        return new Match(query, Arrays.copyOf(rows, found));
+    }
+
+    /**
+     * Checks or unchecks the row at a filtered position.
+     */
+    void toggle(int position) {
+        int row = this.visible[position];
+        this.checked[row] = !this.checked[row];
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Returns the indexes of the checked rows in the original list, ascending.
+     */
+    int[] selectedIndexes() {
+        int count = 0;
+        for (boolean isChecked : this.checked) {
+            if (isChecked) {
+                count++;
+            }
+        }
+        int[] selected = new int[count];
+        for (int i = 0, j = 0; i < this.checked.length; i++) {
+            if (this.checked[i]) {
+                selected[j++] = i;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Stops any query still running; its result will not be applied.
+     */
+    void cancel() {
+        this.generation.incrementAndGet();
+    }
+
+    public int getCount() {
+        return this.visible.length;
+    }
+
+    public String getItem(int position) {
+        return this.items[this.visible[position]];
+    }
+
+    public long getItemId(int position) {
+        return this.visible[position];
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+
+    public View getView(int position, View convertView, ViewGroup parent) {
+        CheckedTextView row = (CheckedTextView) convertView;
+        if (row == null) {
+            row = (CheckedTextView) LayoutInflater.from(parent.getContext()).inflate(android.R.layout.simple_list_item_multiple_choice, parent, false);
+        }
+        int index = this.visible[position];
+        row.setText(this.items[index]);
+        row.setChecked(this.checked[index]);
+        return row;
+    }
+
+    /**
+     * A folded query and the rows it matched.
+     */
+    private static class Match {
+        final String query;
+        final int[] rows;
+
+        Match(String query, int[] rows) {
+            this.query = query;
+            this.rows = rows;
+        }
+    }
+}
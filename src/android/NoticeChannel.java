@@ -0,0 +1,401 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaInterface;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.app.Activity;
+import android.graphics.Color;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Gravity;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.FrameLayout;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+import android.widget.Toast;
+
+/**
+ * Non-blocking toasts and snackbars, shown one at a time.
+ *
+ * A notice with the same key as one that is waiting or on screen is not queued
+ * again; the earlier one counts it and shows the newer text with the count.
+ * Notices are admitted at a limited rate (a token bucket refilled at the
+ * NoticeRate preference, in messages per second) and at most MAX_PENDING wait.
+ * Past either limit a notice is dropped or, depending on the NoticeOverflowPolicy
+ * preference, merged into the newest waiting notice of the same kind: the same
+ * key, toast or snackbar, and snackbar action. One with nothing to merge into is
+ * dropped, so a burst never piles up work on the main looper.
+ *
+ * Every caller is answered once with {event, count}, where event is "action"
+ * (the snackbar button was tapped), "hidden", or "dropped".
+ */
+class NoticeChannel {
+
+    public static final double DEFAULT_RATE = 2;
+
+    private static final int MAX_PENDING = 16;
+    private static final long TOAST_SHORT_MILLIS = 2000;
+    private static final long TOAST_LONG_MILLIS = 3500;
+    private static final long SNACKBAR_MILLIS = 2750;
+    private static final int SNACKBAR_BACKGROUND = 0xFF323232;
+
+    /**
+     * One toast or snackbar and everyone waiting for it to go away.
+     */
+    static class Notice {
+        final String key;
+        final boolean snackbar;
+        final String actionLabel;
+        final long duration;
+        String message;
+        int count = 1;
+        private final ArrayList<CallbackContext> callers = new ArrayList<CallbackContext>(1);
+        private Toast toast;
+        private View bar;
+        private TextView text;
+        private Runnable hide;
+
+        /**
+         * @param message           The text to show
+         * @param snackbar          A snackbar rather than a toast
+         * @param options           {key, duration, action}; duration is "short" or "long"
+         *                          for toasts and milliseconds for snackbars, action is
+         *                          the snackbar button label
+         * @param callbackContext   The caller
+         */
+        Notice(String message, boolean snackbar, JSONObject options, CallbackContext callbackContext) {
+            this.message = message;
+            this.snackbar = snackbar;
+            this.key = options == null ? null : options.optString("key", null);
+            this.actionLabel = !snackbar || options == null ? null : options.optString("action", null);
+            if (snackbar) {
+                this.duration = options == null ? SNACKBAR_MILLIS : options.optLong("duration", SNACKBAR_MILLIS);
+            } else {
+                this.duration = options != null && "long".equals(options.optString("duration")) ? TOAST_LONG_MILLIS : TOAST_SHORT_MILLIS;
+            }
+            this.callers.add(callbackContext);
+        }
+
+        /**
+         * Takes over another notice: its callers, its count and its newer text.
+         */
+        void absorb(Notice other) {
+            this.message = other.message;
+            this.count += other.count;
+            this.callers.addAll(other.callers);
+        }
+
+        String displayText() {
+            return this.count > 1 ? this.message + " (" + this.count + ")" : this.message;
+        }
+    }
+
+    private final CordovaInterface cordova;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final double ratePerMilli;
+    private final double burst;
+    private final boolean mergeOverflow;
+    private final ArrayDeque<Notice> pending = new ArrayDeque<Notice>(MAX_PENDING);
+    private final HashMap<String, Notice> pendingByKey = new HashMap<String, Notice>();
+    private Notice visible = null;
+    private double tokens;
+    private long refilledAt = SystemClock.uptimeMillis();
+
+    private long submitted = 0;
+    private long shown = 0;
+    private long coalesced = 0;
+    private long merged = 0;
+    private long dropped = 0;
+
+    private final Runnable showNext = new Runnable() {
+        public void run() {
+            showNext();
+        }
+    };
+
+    /**
+     * @param cordova           The Cordova interface
+     * @param rate              Notices admitted per second
+     * @param mergeOverflow     Whether notices over the limits are merged into the
+     *                          newest waiting one rather than dropped
+     */
+    NoticeChannel(CordovaInterface cordova, double rate, boolean mergeOverflow) {
+        this.cordova = cordova;
+        double perSecond = rate > 0 ? rate : DEFAULT_RATE;
+        this.ratePerMilli = perSecond / 1000;
+        this.burst = Math.max(perSecond, 1);
+        this.tokens = this.burst;
+        this.mergeOverflow = mergeOverflow;
+    }
+
+    /**
+     * Queues a notice. May be called from any thread.
+     */
+    void submit(Notice notice) {
+        final Notice twin;
+        synchronized (this) {
+            this.submitted++;
+            Notice match = null;
+            if (notice.key != null) {
+                match = this.visible != null && notice.key.equals(this.visible.key) ? this.visible : this.pendingByKey.get(notice.key);
+            }
+            if (match == null) {
+                long now = SystemClock.uptimeMillis();
+                this.tokens = Math.min(this.burst, this.tokens + (now - this.refilledAt) * this.ratePerMilli);
+                this.refilledAt = now;
+                if (this.tokens >= 1 && this.pending.size() < MAX_PENDING) {
+                    this.tokens -= 1;
+                    this.pending.add(notice);
+                    if (notice.key != null) {
+                        this.pendingByKey.put(notice.key, notice);
+                    }
+                    if (this.visible == null) {
+                        this.handler.post(this.showNext);
+                    }
+                    return;
+                }
+                match = this.mergeOverflow ? newestLike(notice) : null;
+                if (match != null) {
+                    this.merged++;
+                } else {
+                    this.dropped++;
+                }
+            } else {
+                this.coalesced++;
+            }
+            twin = match;
+            if (twin != null) {
+                twin.absorb(notice);
+            }
+        }
+        if (twin == null) {
+            answer(notice, "dropped");
+        } else {
+            this.handler.post(new Runnable() {
+                public void run() {
+                    refresh(twin);
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the newest waiting notice an overflowing one can be merged into,
+     * or null. Merging must not change a notice's key, kind or action button.
+     */
+    private Notice newestLike(Notice notice) {
+        Iterator<Notice> waiting = this.pending.descendingIterator();
+        while (waiting.hasNext()) {
+            Notice candidate = waiting.next();
+            if (candidate.snackbar == notice.snackbar && same(candidate.key, notice.key) && same(candidate.actionLabel, notice.actionLabel)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static boolean same(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Shows the next waiting notice. UI thread only.
+     */
+    private void showNext() {
+        final Notice next;
+        synchronized (this) {
+            if (this.visible != null || this.pending.isEmpty()) {
+                return;
+            }
+            next = this.pending.poll();
+            if (next.key != null && this.pendingByKey.get(next.key) == next) {
+                this.pendingByKey.remove(next.key);
+            }
+            this.visible = next;
+            this.shown++;
+        }
+        Activity activity = this.cordova.getActivity();
+        if (activity.isFinishing()) {
+            hide(next, "hidden");
+            return;
+        }
+        if (next.snackbar) {
+            next.bar = createBar(activity, next);
+            ViewGroup content = (ViewGroup) activity.findViewById(android.R.id.content);
+            content.addView(next.bar, new FrameLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT, Gravity.BOTTOM));
+        } else {
+            next.toast = Toast.makeText(activity, next.displayText(), next.duration == TOAST_LONG_MILLIS ? Toast.LENGTH_LONG : Toast.LENGTH_SHORT);
+            next.toast.show();
+        }
+        next.hide = new Runnable() {
+            public void run() {
+                hide(next, "hidden");
+            }
+        };
+        this.handler.postDelayed(next.hide, next.duration);
+    }
+
+    private View createBar(Activity activity, final Notice notice) {
+        LinearLayout bar = new LinearLayout(activity);
+        bar.setOrientation(LinearLayout.HORIZONTAL);
+        bar.setGravity(Gravity.CENTER_VERTICAL);
+        bar.setBackgroundColor(SNACKBAR_BACKGROUND);
+        int padding = (int) (activity.getResources().getDisplayMetrics().density * 16);
+        bar.setPadding(padding, padding / 2, padding / 2, padding / 2);
+
+        notice.text = new TextView(activity);
+        notice.text.setTextColor(Color.WHITE);
+        notice.text.setText(notice.displayText());
+        bar.addView(notice.text, new LinearLayout.LayoutParams(0, ViewGroup.LayoutParams.WRAP_CONTENT, 1));
+
+        if (notice.actionLabel != null) {
+            Button action = new Button(activity);
+            action.setText(notice.actionLabel);
+            action.setOnClickListener(new View.OnClickListener() {
+                public void onClick(View v) {
+                    hide(notice, "action");
+                }
+            });
+            bar.addView(action);
+        }
+        return bar;
+    }
+
+    /**
+     * Shows the new count of a notice that absorbed another. If it is on screen
+     * it stays there for another full duration. UI thread only.
+     */
+    private void refresh(Notice notice) {
+        synchronized (this) {
+            if (this.visible != notice) {
+                return;
+            }
+        }
+        if (notice.toast != null) {
+            notice.toast.setText(notice.displayText());
+            notice.toast.show();
+        }
+        if (notice.text != null) {
+            notice.text.setText(notice.displayText());
+        }
+        if (notice.hide != null) {
+            this.handler.removeCallbacks(notice.hide);
+            this.handler.postDelayed(notice.hide, notice.duration);
+        }
+    }
+
+    /**
+     * Takes a notice off screen, answers it and shows the next one. UI thread only.
+     */
+    private void hide(Notice notice, String event) {
+        synchronized (this) {
+            if (this.visible != notice) {
+                return;
+            }
+            this.visible = null;
+        }
+        if (notice.hide != null) {
+            this.handler.removeCallbacks(notice.hide);
+        }
+        if (notice.bar != null && notice.bar.getParent() != null) {
+            ((ViewGroup) notice.bar.getParent()).removeView(notice.bar);
+        }
+        notice.bar = null;
+        notice.text = null;
+        notice.toast = null;
+        answer(notice, event);
+        showNext();
+    }
+
+    private void answer(Notice notice, String event) {
+        CallbackContext[] callers;
+        int count;
+        synchronized (this) {
+            callers = notice.callers.toArray(new CallbackContext[notice.callers.size()]);
+            count = notice.count;
+        }
+        JSONObject result = new JSONObject();
+        try {
+            result.put("event", event);
+            result.put("count", count);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        for (CallbackContext caller : callers) {
+            caller.success(result);
+        }
+    }
+
+    /**
+     * Removes the snackbar on screen and answers every notice as hidden, e.g.
+     * when the activity is destroyed. UI thread only.
+     */
+    void clear() {
+        ArrayList<Notice> waiting;
+        Notice current;
+        synchronized (this) {
+            waiting = new ArrayList<Notice>(this.pending);
+            this.pending.clear();
+            this.pendingByKey.clear();
+            current = this.visible;
+        }
+        if (current != null) {
+            hide(current, "hidden");
+        }
+        for (Notice notice : waiting) {
+            answer(notice, "hidden");
+        }
+    }
+
+    synchronized void resetStats() {
+        this.submitted = 0;
+        this.shown = 0;
+        this.coalesced = 0;
+        this.merged = 0;
+        this.dropped = 0;
+    }
+
+    /**
+     * Returns the channel counters as a JSON object.
+     */
+    synchronized JSONObject stats() throws JSONException {
+        JSONObject stats = new JSONObject();
+        stats.put("pending", this.pending.size());
+        stats.put("visible", this.visible != null);
+        stats.put("submitted", this.submitted);
+        stats.put("shown", this.shown);
+        stats.put("coalesced", this.coalesced);
+        stats.put("merged", this.merged);
+        stats.put("dropped", this.dropped);
+        stats.put("overflowPolicy", this.mergeOverflow ? "merge" : "drop");
+        return stats;
+    }
+}
@@ -18,6 +18,13 @@
 */
 package jp.watnow.plugins.dialog;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.apache.cordova.CallbackContext;
 import org.apache.cordova.CordovaInterface;
 import org.apache.cordova.CordovaPlugin;
@@ -27,14 +34,27 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import android.annotation.SuppressLint;
+import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.AlertDialog.Builder;
 import android.app.ProgressDialog;
+import android.content.Context;
 import android.content.DialogInterface;
+import android.content.res.Configuration;
+import android.os.Build;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.text.Editable;
 import android.text.InputType;
+import android.text.TextWatcher;
 import android.util.Log;
+import android.view.Choreographer;
+import android.view.View;
+import android.widget.AbsListView;
+import android.widget.AdapterView;
 import android.widget.EditText;
 import android.widget.LinearLayout;
+import android.widget.ListView;
 import android.widget.TextView;
 
 
@@ -54,10 +74,119 @@ public class Notification extends CordovaPlugin {
     final static String INPUT_SECURE = "secure";
     final static String INPUT_NORMAL = "normal";
 
+    private static final int LIST_PAGE_THRESHOLD = 20;
+    private static final int BATCH_MAX_STEPS = 256;
+    private static final List<String> DIALOG_ACTIONS = Arrays.asList("alert", "confirm", "prompt", "list", "multiList", "login");
+    private static final List<String> MESSAGE_FORMATS = Arrays.asList("text", "html", "markdown");
+    private static final boolean HAS_DEVICE_DEFAULT_THEME = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+    private static final boolean HAS_TEXT_DIRECTION = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1;
+    private static final boolean HAS_CHOREOGRAPHER = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
+
+    private final DialogMetrics metrics = new DialogMetrics();
+    private DialogScheduler scheduler;
+    private NoticeChannel notices;
+    private CredentialStore credentials;
+    private long defaultTimeout = 0;
+    private MessageQueue.IdleHandler warmUp = null;
+
+    private volatile int progressLatest = 0;
+    private volatile Choreographer choreographer = null;
+    private final AtomicBoolean progressUpdateScheduled = new AtomicBoolean(false);
+    private final AtomicLong progressUpdatesApplied = new AtomicLong();
+    private final AtomicLong progressUpdatesCoalesced = new AtomicLong();
+    private ViewPool viewPool;
+    private final ConcurrentHashMap<String, ListStream> listStreams = new ConcurrentHashMap<String, ListStream>();
+    private final ConcurrentHashMap<String, DialogTemplate> templates = new ConcurrentHashMap<String, DialogTemplate>();
+    private final HashMap<String, ActionHandler> actions = new HashMap<String, ActionHandler>();
+
     /**
      * Constructor.
      */
     public Notification() {
+        this.registerActions();
+    }
+
+    /**
+     * Reads the config.xml preferences, creates the scheduler, view pool,
+     * notice channel and credential store, and warms up dialog views once the
+     * UI thread is idle.
+     */
+    @Override
+    protected void pluginInitialize() {
+        int capacity = this.preferences.getInteger("DialogQueueCapacity", DialogScheduler.DEFAULT_CAPACITY);
+        boolean evictOldest = "evictOldest".equals(this.preferences.getString("DialogOverflowPolicy", "reject"));
+        this.defaultTimeout = this.preferences.getInteger("DialogTimeout", 0);
+        this.scheduler = new DialogScheduler(this.cordova, capacity, evictOldest, this.metrics);
+        this.viewPool = new ViewPool(this.preferences.getInteger("DialogPoolSize", ViewPool.DEFAULT_SIZE));
+        boolean mergeNotices = "merge".equals(this.preferences.getString("NoticeOverflowPolicy", "merge"));
+        this.notices = new NoticeChannel(this.cordova, this.preferences.getDouble("NoticeRate", NoticeChannel.DEFAULT_RATE), mergeNotices);
+        this.credentials = new CredentialStore(this.cordova.getActivity().getSharedPreferences(CredentialStore.PREFERENCES_NAME, Context.MODE_PRIVATE),
+                CredentialStore.deviceKeys(), this.cordova.getThreadPool(), this.preferences.getInteger("CredentialCacheTtl", (int) CredentialStore.DEFAULT_TTL));
+
+        final CordovaInterface cordova = this.cordova;
+        cordova.getActivity().runOnUiThread(new Runnable() {
+            public void run() {
+                warmUp = new MessageQueue.IdleHandler() {
+                    public boolean queueIdle() {
+                        warmUp = null;
+                        warmUp(cordova.getActivity());
+                        return false;
+                    }
+                };
+                Looper.myQueue().addIdleHandler(warmUp);
+            }
+        });
+    }
+
+    /**
+     * Pooled views are bound to the old configuration's resources.
+     */
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        this.viewPool.invalidate();
+    }
+
+    /**
+     * Decrypted login credentials do not outlive the app leaving the foreground.
+     */
+    @Override
+    public void onPause(boolean multitasking) {
+        this.credentials.wipe();
+    }
+
+    /**
+     * Takes the visible dialog down with the activity instead of leaking it.
+     * This plugin and its web view go away with the activity, so every dialog,
+     * shown or waiting, is answered with BUTTON_CANCELLED rather than left
+     * hanging. Toasts and snackbars are answered as hidden.
+     */
+    @Override
+    public void onDestroy() {
+        if (this.warmUp != null) {
+            // The UI thread never went idle; the handler would keep this plugin alive.
+            Looper.myQueue().removeIdleHandler(this.warmUp);
+            this.warmUp = null;
+        }
+        this.scheduler.destroy();
+        this.viewPool.invalidate();
+        this.notices.clear();
+    }
+
+    /**
+     * Runs once the UI thread first goes idle. Fills the view pool and, where
+     * Dialog.create() is available, inflates a throwaway message and list dialog
+     * so the layouts, theme and classes are loaded before the first real dialog.
+     */
+    @SuppressLint("NewApi")
+    private void warmUp(Activity activity) {
+        if (activity.isFinishing()) {
+            return;
+        }
+        this.viewPool.prefill(activity);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            createDialog(this.cordova).setTitle("").setMessage("").create().create();
+            createDialog(this.cordova).setTitle("").setItems(new String[] { "" }, null).create().create();
+        }
     }
 
     /**
@@ -69,44 +198,314 @@ public class Notification extends CordovaPlugin {
      * @return                  True when the action was valid, false otherwise.
      */
     public boolean execute(String action, JSONArray args, CallbackContext callbackContext) throws JSONException {
+        ActionHandler handler = this.actions.get(action);
+        if (handler == null) {
+            return false;
+        }
+
     	/*
-    	 * Don't run any of these if the current activity is finishing
-    	 * in order to avoid android.view.WindowManager$BadTokenException
-    	 * crashing the app. Just return true here since false should only
-    	 * be returned in the event of an invalid action.
+    	 * Don't run the spinner and progress actions if the current activity is
+    	 * finishing in order to avoid android.view.WindowManager$BadTokenException
+    	 * crashing the app. Answer with an error but return true, since false
+    	 * should only be returned in the event of an invalid action.
+    	 *
+    	 * Dialogs are only queued, so they skip this check. If the activity is
+    	 * still finishing when a dialog's turn comes, the scheduler answers it
+    	 * as cancelled, so it is neither dropped nor shown on a dying window.
     	 */
-    	if(this.cordova.getActivity().isFinishing()) return true;
-    	
-    	if (action.equals("alert")) {
-            this.alert(args.getString(0), args.getString(1), args.getString(2), callbackContext);
+        if (handler.needsLiveActivity && this.cordova.getActivity().isFinishing()) {
+            callbackContext.error("Activity is finishing");
             return true;
         }
-        else if (action.equals("confirm")) {
-            this.confirm(args.getString(0), args.getString(1), args.getJSONArray(2), callbackContext);
-            return true;
+        handler.execute(args, callbackContext);
+        return true;
+    }
+
+    /**
+     * Handler for one plugin action, looked up by name in the action table.
+     */
+    private abstract static class ActionHandler {
+        /** Whether the action must not run while the activity is finishing. */
+        final boolean needsLiveActivity;
+
+        ActionHandler(boolean needsLiveActivity) {
+            this.needsLiveActivity = needsLiveActivity;
         }
-        else if (action.equals("prompt")) {
-        	String type = INPUT_NORMAL;
-        	if(args.getString(4).equals(INPUT_SECURE)){
-        		type = INPUT_SECURE;
-        	}
-            this.prompt(args.getString(0), args.getString(1), args.getJSONArray(2), args.getString(3),type, callbackContext);
-            return true;
+
+        abstract void execute(JSONArray args, CallbackContext callbackContext) throws JSONException;
+    }
+
+    /**
+     * Fills the action table once, so execute() finds its handler with a single
+     * hash lookup instead of comparing the action against every name.
+     */
+    private void registerActions() {
+        this.actions.put("queueStats", new ActionHandler(false) {
+            void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+                callbackContext.success(scheduler.stats());
+            }
+        });
+        this.actions.put("stats", new ActionHandler(false) {
+            void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+                JSONObject stats = new JSONObject();
+                stats.put("queue", scheduler.stats());
+                stats.put("actions", metrics.snapshot());
+                stats.put("progress", progressStats());
+                stats.put("notices", notices.stats());
+                stats.put("listStreams", listStreams.size());
+                IconLoader icons = IconLoader.peek();
+                if (icons != null) {
+                    stats.put("icons", icons.stats());
+                }
+                callbackContext.success(stats);
+            }
+        });
+        this.actions.put("resetStats", new ActionHandler(false) {
+            void execute(JSONArray args, CallbackContext callbackContext) {
+                metrics.reset();
+                scheduler.resetStats();
+                progressUpdatesApplied.set(0);
+                progressUpdatesCoalesced.set(0);
+                notices.resetStats();
+                if (IconLoader.peek() != null) {
+                    IconLoader.peek().resetStats();
+                }
+                callbackContext.success();
+            }
+        });
+
+        // Dialog actions. Their exec arguments end with the options object.
+        this.actions.put("alert", new ActionHandler(false) {
+            void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+                alert(args.getString(0), args.getString(1), args.getString(2), newRequest("alert", args, 3, callbackContext));
+            }
+        });
+        this.actions.put("confirm", new ActionHandler(false) {
+            void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+                confirm(args.getString(0), args.getString(1), args.getJSONArray(2), newRequest("confirm", args, 3, callbackContext));
+            }
+        });
+        this.actions.put("prompt", new ActionHandler(false) {
+            void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+                String type = INPUT_NORMAL;
+                if (args.getString(4).equals(INPUT_SECURE)) {
+                    type = INPUT_SECURE;
+                }
+                prompt(args.getString(0), args.getString(1), args.getJSONArray(2), args.getString(3), type, newRequest("prompt", args, 5, callbackContext));
+            }
+        });
+        this.actions.put("list", new ActionHandler(false) {
+            void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+                list(args.getString(0), args.getJSONArray(1), newRequest("list", args, 2, callbackContext));
+            }
+        });
+        this.actions.put("multiList", new ActionHandler(false) {
+            void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+                JSONObject options = args.optJSONObject(3);
+                multiList(args.getString(0), args.getJSONArray(1), args.getJSONArray(2), options != null ? options.optJSONArray("selected") : null, newRequest("multiList", args, 3, callbackContext));
+            }
+        });
+        this.actions.put("login", new ActionHandler(false) {
+            void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+                login(args.getString(0), args.getString(1), args.getJSONArray(2), args.getJSONArray(3), newRequest("login", args, 4, callbackContext));
+            }
+        });
+        this.actions.put("forgetCredentials", new ActionHandler(false) {
+            void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+                credentials.forget(args.getString(0));
+                callbackContext.success();
+            }
+        });
+        this.actions.put("dismiss", new ActionHandler(false) {
+            void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+                dismiss(args.getString(0), callbackContext);
+            }
+        });
+        this.actions.put("dismissAll", new ActionHandler(false) {
+            void execute(JSONArray args, CallbackContext callbackContext) {
+                dismissAll(callbackContext);
+            }
+        });
+        this.actions.put("update", new ActionHandler(false) {
+            void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+                JSONObject changes = args.getJSONObject(1);
+                update(args.getString(0), changes.optString("title", null), changes.optString("message", null), callbackContext);
+            }
+        });
+        this.actions.put("batch", new ActionHandler(false) {
+            void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+                JSONObject options = args.optJSONObject(1);
+                batch(args.getJSONArray(0), options != null ? options.optString("id", null) : null, callbackContext);
+            }
+        });
+        this.actions.put("defineTemplate", new ActionHandler(false) {
+            void execute(JSONArray args, CallbackContext callbackContext) {
+                try {
+                    templates.put(args.getString(0), DialogTemplate.compile(args.getString(1), args.getJSONArray(2), args.optJSONObject(3)));
+                    callbackContext.success();
+                } catch (JSONException e) {
+                    callbackContext.error(e.getMessage());
+                }
+            }
+        });
+        this.actions.put("showTemplate", new ActionHandler(false) {
+            void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+                DialogTemplate template = templates.get(args.getString(0));
+                if (template == null) {
+                    callbackContext.error("Unknown template: " + args.getString(0));
+                    return;
+                }
+                actions.get(template.action).execute(template.args(args.optJSONArray(1), args.optJSONObject(2)), callbackContext);
+            }
+        });
+        this.actions.put("listBegin", new ActionHandler(false) {
+            void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+                JSONObject options = args.optJSONObject(3);
+                boolean pageRequests = options != null && options.optBoolean("pageRequests", false);
+                listBegin(args.getString(0), args.getString(1), args.getJSONArray(2), pageRequests, newUniqueRequest("list", options, callbackContext));
+            }
+        });
+        this.actions.put("listAppend", new ActionHandler(false) {
+            void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+                listAppend(args.getString(0), args.getJSONArray(1), callbackContext);
+            }
+        });
+        this.actions.put("listEnd", new ActionHandler(false) {
+            void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+                listEnd(args.getString(0), callbackContext);
+            }
+        });
+        this.actions.put("registerSuggestions", new ActionHandler(false) {
+            void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+                registerSuggestions(args.getString(0), args.getJSONArray(1), callbackContext);
+            }
+        });
+        this.actions.put("unregisterSuggestions", new ActionHandler(false) {
+            void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+                callbackContext.success(SuggestionIndex.unregister(args.getString(0)) ? 1 : 0);
+            }
+        });
+
+        // Toasts and snackbars never block and are queued on their own channel.
+        this.actions.put("toast", new ActionHandler(false) {
+            void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+                notices.submit(new NoticeChannel.Notice(args.getString(0), false, args.optJSONObject(1), callbackContext));
+            }
+        });
+        this.actions.put("snackbar", new ActionHandler(false) {
+            void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+                notices.submit(new NoticeChannel.Notice(args.getString(0), true, args.optJSONObject(1), callbackContext));
+            }
+        });
+
+        // Spinner and progress dialogs are shown directly and answer right away.
+        this.actions.put("activityStart", new ActionHandler(true) {
+            void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+                activityStart(args.getString(0), args.getString(1));
+                callbackContext.success();
+            }
+        });
+        this.actions.put("activityStop", new ActionHandler(true) {
+            void execute(JSONArray args, CallbackContext callbackContext) {
+                activityStop();
+                callbackContext.success();
+            }
+        });
+        this.actions.put("progressStart", new ActionHandler(true) {
+            void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+                progressStart(args.getString(0), args.getString(1));
+                callbackContext.success();
+            }
+        });
+        this.actions.put("progressValue", new ActionHandler(true) {
+            void execute(JSONArray args, CallbackContext callbackContext) throws JSONException {
+                progressValue(args.getInt(0));
+                callbackContext.success();
+            }
+        });
+        this.actions.put("progressStop", new ActionHandler(true) {
+            void execute(JSONArray args, CallbackContext callbackContext) {
+                progressStop();
+                callbackContext.success();
+            }
+        });
+    }
+
+    /**
+     * Creates the scheduler entry for a dialog action. The arguments before the
+     * trailing options object make up the coalescing key, so two calls showing the
+     * same dialog are answered by a single user response.
+     *
+     * @param action            The dialog action.
+     * @param args              The action arguments.
+     * @param optionsIndex      Position of the optional options object in args.
+     * @param callbackContext   The callback context of the caller.
+     */
+    private DialogRequest newRequest(String action, JSONArray args, int optionsIndex, CallbackContext callbackContext) throws JSONException {
+        JSONObject options = args.optJSONObject(optionsIndex);
+        StringBuilder key = new StringBuilder(action);
+        for (int i = 0; i < optionsIndex; i++) {
+            key.append('\u0000').append(args.opt(i));
         }
-        else if (action.equals("list")) {
-            this.list(args.getString(0), args.getJSONArray(1), callbackContext);
-            return true;
-        } else if (action.equals("login")) {
-            this.login(args.getString(0), args.getString(1), args.getJSONArray(2), args.getJSONArray(3), callbackContext);
-            return true;
+        if (options != null) {
+            key.append('\u0000').append(options.optBoolean("compact", false)).append('\u0000').append(options.optLong("timeout", -1));
+            key.append('\u0000').append(options.opt("validators"));
+            key.append('\u0000').append(options.optString("suggestions", null)).append('\u0000').append(options.optInt("suggestionLimit", 0));
+            key.append('\u0000').append(options.optString("format", null)).append('\u0000').append(options.optString("credentials", null));
         }
-        else {
-            return false;
+        return this.applyOptions(new DialogRequest(this.scheduler, action, key.toString(), priority(options), callbackContext, this.webView), options);
+    }
+
+    /**
+     * Creates a scheduler entry that is never coalesced with another call.
+     */
+    private DialogRequest newUniqueRequest(String action, JSONObject options, CallbackContext callbackContext) throws JSONException {
+        return this.applyOptions(new DialogRequest(this.scheduler, action, null, priority(options), callbackContext, this.webView), options);
+    }
+
+    private static int priority(JSONObject options) {
+        return options == null ? DialogRequest.PRIORITY_NORMAL : options.optInt("priority", DialogRequest.PRIORITY_NORMAL);
+    }
+
+    /**
+     * Copies the per-call options every dialog understands onto its request:
+     * compact (result encoding), timeout (milliseconds, 0 for none, defaulting
+     * to the DialogTimeout preference), validators (input rules, see InputValidator)
+     * suggestions (a dictionary id from registerSuggestions) with suggestionLimit,
+     * format (how alert and confirm render the message, see RichMessage),
+     * credentials (the account login keeps its entries under, see CredentialStore)
+     * and id (what dismiss and update refer to the dialog by).
+     */
+    private DialogRequest applyOptions(DialogRequest request, JSONObject options) throws JSONException {
+        if (options == null) {
+            request.timeout = this.defaultTimeout;
+            return request;
+        }
+        request.compact = options.optBoolean("compact", false);
+        request.timeout = options.optLong("timeout", this.defaultTimeout);
+        request.validators = InputValidator.compileAll(options.opt("validators"));
+        request.suggestions = options.optString("suggestions", null);
+        request.suggestionLimit = options.optInt("suggestionLimit", SuggestionIndex.DEFAULT_LIMIT);
+        request.format = options.optString("format", null);
+        request.credentials = options.optString("credentials", null);
+        if (request.format != null && !MESSAGE_FORMATS.contains(request.format)) {
+            throw new JSONException("Unsupported message format: " + request.format);
+        }
+        if (options.has("id")) {
+            request.addId(options.getString("id"));
         }
+        return request;
+    }
 
-        // Only alert and confirm are async.
-        //callbackContext.success();
-        //return true;
+    /**
+     * Returns the scheduler entry for a callback, creating an uncoalesced one when
+     * a dialog method is called directly rather than through execute.
+     */
+    private DialogRequest requestFor(String action, CallbackContext callbackContext) {
+        if (callbackContext instanceof DialogRequest) {
+            return (DialogRequest) callbackContext;
+        }
+        return new DialogRequest(this.scheduler, action, null, DialogRequest.PRIORITY_NORMAL, callbackContext, this.webView);
     }
 
     //--------------------------------------------------------------------------
@@ -122,33 +521,41 @@ public class Notification extends CordovaPlugin {
      */
     public synchronized void alert(final String message, final String title, final String buttonLabel, final CallbackContext callbackContext) {
     	final CordovaInterface cordova = this.cordova;
+    	final DialogRequest request = this.requestFor("alert", callbackContext);
+        if (request.format != null) {
+            request.richMessage = RichMessage.prepare(request.format, message, cordova.getThreadPool());
+        }
 
         Runnable runnable = new Runnable() {
             public void run() {
 
                 AlertDialog.Builder dlg = createDialog(cordova); // new AlertDialog.Builder(cordova.getActivity(), AlertDialog.THEME_DEVICE_DEFAULT_LIGHT);
-                dlg.setMessage(message);
+                if (request.richMessage != null) {
+                    dlg.setView(request.richMessage.createView(dlg.getContext()));
+                } else {
+                    dlg.setMessage(message);
+                }
                 dlg.setTitle(title);
                 dlg.setCancelable(false);
                 dlg.setPositiveButton(buttonLabel,
                         new AlertDialog.OnClickListener() {
                             public void onClick(DialogInterface dialog, int which) {
                                 dialog.dismiss();
-                                callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, 0));
+                                request.sendPluginResult(new PluginResult(PluginResult.Status.OK, 0));
                             }
                         });
                 dlg.setOnCancelListener(new AlertDialog.OnCancelListener() {
                     public void onCancel(DialogInterface dialog)
                     {
                         dialog.dismiss();
-                        callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, 0));
+                        request.sendPluginResult(new PluginResult(PluginResult.Status.OK, 0));
                     }
                 });
 
-                changeTextDirection(dlg);
+                showDialog(dlg, request);
             };
         };
-        this.cordova.getActivity().runOnUiThread(runnable);
+        this.scheduler.submit(request, runnable);
     }
 
     /**
@@ -163,11 +570,19 @@ public class Notification extends CordovaPlugin {
      */
     public synchronized void confirm(final String message, final String title, final JSONArray buttonLabels, final CallbackContext callbackContext) {
     	final CordovaInterface cordova = this.cordova;
+    	final DialogRequest request = this.requestFor("confirm", callbackContext);
+        if (request.format != null) {
+            request.richMessage = RichMessage.prepare(request.format, message, cordova.getThreadPool());
+        }
 
         Runnable runnable = new Runnable() {
             public void run() {
                 AlertDialog.Builder dlg = createDialog(cordova); // new AlertDialog.Builder(cordova.getActivity(), AlertDialog.THEME_DEVICE_DEFAULT_LIGHT);
-                dlg.setMessage(message);
+                if (request.richMessage != null) {
+                    dlg.setView(request.richMessage.createView(dlg.getContext()));
+                } else {
+                    dlg.setMessage(message);
+                }
                 dlg.setTitle(title);
                 dlg.setCancelable(false);
 
@@ -178,7 +593,7 @@ public class Notification extends CordovaPlugin {
                             new AlertDialog.OnClickListener() {
                                 public void onClick(DialogInterface dialog, int which) {
                                     dialog.dismiss();
-                                    callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, 1));
+                                    request.sendPluginResult(new PluginResult(PluginResult.Status.OK, 1));
                                 }
                             });
                     } catch (JSONException e) { }
@@ -191,7 +606,7 @@ public class Notification extends CordovaPlugin {
                             new AlertDialog.OnClickListener() {
                                 public void onClick(DialogInterface dialog, int which) {
                                     dialog.dismiss();
-                                    callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, 2));
+                                    request.sendPluginResult(new PluginResult(PluginResult.Status.OK, 2));
                                 }
                             });
                     } catch (JSONException e) { }
@@ -204,7 +619,7 @@ public class Notification extends CordovaPlugin {
                             new AlertDialog.OnClickListener() {
                                 public void onClick(DialogInterface dialog, int which) {
                                   dialog.dismiss();
-                                  callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, 3));
+                                  request.sendPluginResult(new PluginResult(PluginResult.Status.OK, 3));
                                 }
                             });
                     } catch (JSONException e) { }
@@ -213,14 +628,14 @@ public class Notification extends CordovaPlugin {
                     public void onCancel(DialogInterface dialog)
                     {
                         dialog.dismiss();
-                        callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, 0));
+                        request.sendPluginResult(new PluginResult(PluginResult.Status.OK, 0));
                     }
                 });
 
-                changeTextDirection(dlg);
+                showDialog(dlg, request);
             };
         };
-        this.cordova.getActivity().runOnUiThread(runnable);
+        this.scheduler.submit(request, runnable);
     }
 
     /**
@@ -238,10 +653,11 @@ public class Notification extends CordovaPlugin {
     public synchronized void prompt(final String message, final String title, final JSONArray buttonLabels, final String defaultText,final String dialogType, final CallbackContext callbackContext) {
   	
         final CordovaInterface cordova = this.cordova;
+        final DialogRequest request = this.requestFor("prompt", callbackContext);
        
         Runnable runnable = new Runnable() {
             public void run() {
-                final EditText promptInput =  new EditText(cordova.getActivity());
+                final EditText promptInput = viewPool.acquireInput(cordova.getActivity());
                 promptInput.setHint(defaultText);
                 Log.d("DialogPlugin",dialogType);
                 if(dialogType.equals(INPUT_SECURE)){
@@ -254,8 +670,6 @@ public class Notification extends CordovaPlugin {
                 
                 dlg.setView(promptInput);
                 
-                final JSONObject result = new JSONObject();
-                
                 // First button
                 if (buttonLabels.length() > 0) {
                     try {
@@ -263,11 +677,7 @@ public class Notification extends CordovaPlugin {
                             new AlertDialog.OnClickListener() {
                                 public void onClick(DialogInterface dialog, int which) {
                                     dialog.dismiss();
-                                    try {
-                                        result.put("buttonIndex",1);
-                                        result.put("input1", promptInput.getText().toString().trim().length()==0 ? defaultText : promptInput.getText());											
-                                    } catch (JSONException e) { e.printStackTrace(); }
-                                    callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, result));
+                                    request.sendPluginResult(request.result(1, inputText(promptInput, defaultText), null, -1));
                                 }
                             });
                     } catch (JSONException e) { }
@@ -280,11 +690,7 @@ public class Notification extends CordovaPlugin {
                             new AlertDialog.OnClickListener() {
                                 public void onClick(DialogInterface dialog, int which) {
                                     dialog.dismiss();
-                                    try {
-                                        result.put("buttonIndex",2);
-                                        result.put("input1", promptInput.getText().toString().trim().length()==0 ? defaultText : promptInput.getText());
-                                    } catch (JSONException e) { e.printStackTrace(); }
-                                    callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, result));
+                                    request.sendPluginResult(request.result(2, inputText(promptInput, defaultText), null, -1));
                                 }
                             });
                     } catch (JSONException e) { }
@@ -297,11 +703,7 @@ public class Notification extends CordovaPlugin {
                             new AlertDialog.OnClickListener() {
                                 public void onClick(DialogInterface dialog, int which) {
                                     dialog.dismiss();
-                                    try {
-                                        result.put("buttonIndex",3);
-                                        result.put("input1", promptInput.getText().toString().trim().length()==0 ? defaultText : promptInput.getText());
-                                    } catch (JSONException e) { e.printStackTrace(); }
-                                    callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, result));
+                                    request.sendPluginResult(request.result(3, inputText(promptInput, defaultText), null, -1));
                                 }
                             });
                     } catch (JSONException e) { }
@@ -309,18 +711,28 @@ public class Notification extends CordovaPlugin {
                 dlg.setOnCancelListener(new AlertDialog.OnCancelListener() {
                     public void onCancel(DialogInterface dialog){
                         dialog.dismiss();
-                        try {
-                            result.put("buttonIndex",0);
-                            result.put("input1", promptInput.getText().toString().trim().length()==0 ? defaultText : promptInput.getText());
-                        } catch (JSONException e) { e.printStackTrace(); }
-                        callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, result));
+                        request.sendPluginResult(request.result(0, inputText(promptInput, defaultText), null, -1));
                     }
                 });
 
-                changeTextDirection(dlg);
+                AlertDialog dialog = showDialog(dlg, request);
+                final InputValidator.Binding validation = InputValidator.bind(dialog, DialogInterface.BUTTON_NEGATIVE, request.validators, promptInput);
+                SuggestionIndex index = SuggestionIndex.get(request.suggestions);
+                final SuggestionIndex.Popup suggestions = index == null ? null : new SuggestionIndex.Popup(cordova.getThreadPool(), index, request.suggestionLimit, promptInput);
+                dialog.setOnDismissListener(new DialogInterface.OnDismissListener() {
+                    public void onDismiss(DialogInterface dialog) {
+                        if (validation != null) {
+                            validation.unbind();
+                        }
+                        if (suggestions != null) {
+                            suggestions.unbind();
+                        }
+                        viewPool.releaseInput(promptInput);
+                    }
+                });
             };
         };
-        this.cordova.getActivity().runOnUiThread(runnable);
+        this.scheduler.submit(request, runnable);
     }
 
     /**
@@ -332,9 +744,12 @@ public class Notification extends CordovaPlugin {
      */
     public synchronized void list(final String title, final JSONArray data, final CallbackContext callbackContext) {
     	final CordovaInterface cordova = this.cordova;
+    	final DialogRequest request = this.requestFor("list", callbackContext);
 
-    	final String[] options = new String[data.length()];
-    	for(int i = 0;i < data.length();i++){
+    	// Rows given as {text, subtitle, icon} objects need the icon adapter.
+    	final IconListAdapter.Row[] rows = IconListAdapter.hasRows(data) ? IconListAdapter.parse(data) : null;
+    	final String[] options = new String[rows == null ? data.length() : 0];
+    	for(int i = 0;i < options.length;i++){
     		try {
 				options[i] = data.getString(i);
 			} catch (JSONException e) {
@@ -344,53 +759,683 @@ public class Notification extends CordovaPlugin {
     	
         Runnable runnable = new Runnable() {
             public void run() {
-            	final JSONObject result = new JSONObject();
                 AlertDialog.Builder dlg = createDialog(cordova); // new AlertDialog.Builder(cordova.getActivity(), AlertDialog.THEME_DEVICE_DEFAULT_LIGHT);
                 dlg.setTitle(title);
                 dlg.setCancelable(false);
-                dlg.setItems(options, new DialogInterface.OnClickListener() {
+                DialogInterface.OnClickListener select = new DialogInterface.OnClickListener() {
                     public void onClick(DialogInterface dialog, int which) {
                     	dialog.dismiss();
-                    	try {
-                    		result.put("buttonIndex", 1);
-							result.put("selectedIndex", which);
-						} catch (JSONException e) {
-							e.printStackTrace();
-						}
-                        callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, result));
+                    	request.sendPluginResult(request.result(1, null, null, which));
                     }
-                });
+                };
+                if (rows != null) {
+                    dlg.setAdapter(new IconListAdapter(rows, IconLoader.get(cordova.getActivity())), select);
+                } else {
+                    dlg.setItems(options, select);
+                }
                 dlg.setNegativeButton("Cancel",
                         new AlertDialog.OnClickListener() {
                             public void onClick(DialogInterface dialog, int which) {
                                 dialog.dismiss();
-                                try {
-									result.put("buttonIndex", 0);
-								} catch (JSONException e) {
-									e.printStackTrace();
-								}
-                                callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, result));
+                                request.sendPluginResult(request.result(0, null, null, -1));
                             }
                         });
                 dlg.setOnCancelListener(new AlertDialog.OnCancelListener() {
                     public void onCancel(DialogInterface dialog)
                     {
                         dialog.dismiss();
-                        try {
-							result.put("buttonIndex", 0);
-						} catch (JSONException e) {
-							e.printStackTrace();
-						}
-                        callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, result));
+                        request.sendPluginResult(request.result(0, null, null, -1));
+                    }
+                });
+
+                showDialog(dlg, request);
+            };
+        };
+        this.scheduler.submit(request, runnable);
+    }
+
+    /**
+     * Builds and shows a searchable list dialog where any number of rows can be
+     * checked. Typing in the filter field narrows the rows off the UI thread; see
+     * MultiSelectAdapter. The callback gets {buttonIndex, selectedIndexes}.
+     *
+     * @param title             The title of the list
+     * @param data              The rows
+     * @param buttonLabels      Up to 2 button labels, the first accepting the selection
+     * @param selected          Indexes of the rows checked initially
+     * @param callbackContext   The callback context
+     */
+    public synchronized void multiList(final String title, JSONArray data, final JSONArray buttonLabels, JSONArray selected, final CallbackContext callbackContext) {
+        final CordovaInterface cordova = this.cordova;
+        final DialogRequest request = this.requestFor("multiList", callbackContext);
+
+        String[] items = new String[data.length()];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = data.optString(i);
+        }
+        int[] checked = new int[selected != null ? selected.length() : 0];
+        for (int i = 0; i < checked.length; i++) {
+            checked[i] = selected.optInt(i, -1);
+        }
+        // Folding every row happens here, on the bridge thread.
+        final MultiSelectAdapter adapter = new MultiSelectAdapter(items, checked);
+
+        Runnable runnable = new Runnable() {
+            public void run() {
+                Activity activity = cordova.getActivity();
+                AlertDialog.Builder dlg = createDialog(cordova);
+                dlg.setTitle(title);
+                dlg.setCancelable(true);
+
+                final EditText filterInput = new EditText(activity);
+                filterInput.setSingleLine(true);
+                filterInput.setHint("Search");
+                ListView listView = new ListView(activity);
+                listView.setAdapter(adapter);
+                listView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+                    public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                        adapter.toggle(position);
+                    }
+                });
+                LinearLayout layout = new LinearLayout(activity);
+                layout.setOrientation(LinearLayout.VERTICAL);
+                layout.addView(filterInput);
+                layout.addView(listView);
+                dlg.setView(layout);
+
+                for (int i = 0; i < 2 && i < buttonLabels.length(); i++) {
+                    final int buttonIndex = i + 1;
+                    DialogInterface.OnClickListener listener = new DialogInterface.OnClickListener() {
+                        public void onClick(DialogInterface dialog, int which) {
+                            dialog.dismiss();
+                            request.sendPluginResult(request.selectionResult(buttonIndex, adapter.selectedIndexes()));
+                        }
+                    };
+                    if (i == 0) {
+                        dlg.setNegativeButton(buttonLabels.optString(i), listener);
+                    } else {
+                        dlg.setNeutralButton(buttonLabels.optString(i), listener);
+                    }
+                }
+                dlg.setOnCancelListener(new AlertDialog.OnCancelListener() {
+                    public void onCancel(DialogInterface dialog) {
+                        dialog.dismiss();
+                        request.sendPluginResult(request.selectionResult(0, adapter.selectedIndexes()));
+                    }
+                });
+
+                final TextWatcher filterWatcher = new TextWatcher() {
+                    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+                    }
+
+                    public void onTextChanged(CharSequence s, int start, int before, int count) {
+                    }
+
+                    public void afterTextChanged(Editable s) {
+                        adapter.filter(s.toString());
+                    }
+                };
+                filterInput.addTextChangedListener(filterWatcher);
+
+                AlertDialog dialog = showDialog(dlg, request);
+                dialog.setOnDismissListener(new DialogInterface.OnDismissListener() {
+                    public void onDismiss(DialogInterface dialog) {
+                        filterInput.removeTextChangedListener(filterWatcher);
+                        adapter.cancel();
+                    }
+                });
+            };
+        };
+        this.scheduler.submit(request, runnable);
+    }
+
+    /**
+     * Opens a list dialog that is filled page by page. The dialog is shown as soon as
+     * the first page is in; further pages arrive through listAppend and are added to a
+     * recycling adapter, so only the rows on screen ever have views.
+     *
+     * When pageRequests is set, scrolling near the end of the loaded rows sends
+     * {event: "page", loaded: n} on the kept callback until listEnd is called.
+     * The stream is forgotten as soon as its request is answered, whether by the
+     * user, a timeout, dismiss, eviction or a full queue.
+     *
+     * @param listId            Id the caller uses for listAppend and listEnd
+     * @param title             The title of the list
+     * @param firstChunk        The first page of items
+     * @param pageRequests      Whether to ask the caller for more pages while scrolling
+     * @param callbackContext   The callback context
+     */
+    public synchronized void listBegin(final String listId, final String title, JSONArray firstChunk, final boolean pageRequests, final CallbackContext callbackContext) {
+        final CordovaInterface cordova = this.cordova;
+        final DialogRequest request = this.requestFor("list", callbackContext);
+        final ListStream stream = new ListStream(request, firstChunk.length());
+        request.whenResolved = new Runnable() {
+            public void run() {
+                listStreams.remove(listId, stream);
+            }
+        };
+        this.listStreams.put(listId, stream);
+        this.appendToStream(stream, firstChunk);
+
+        Runnable runnable = new Runnable() {
+            public void run() {
+                AlertDialog.Builder dlg = createDialog(cordova);
+                dlg.setTitle(title);
+                dlg.setCancelable(false);
+                dlg.setAdapter(stream.adapter, new DialogInterface.OnClickListener() {
+                    public void onClick(DialogInterface dialog, int which) {
+                        dialog.dismiss();
+                        request.sendPluginResult(request.result(1, null, null, which));
                     }
                 });
+                dlg.setNegativeButton("Cancel",
+                        new AlertDialog.OnClickListener() {
+                            public void onClick(DialogInterface dialog, int which) {
+                                dialog.dismiss();
+                                request.sendPluginResult(request.result(0, null, null, -1));
+                            }
+                        });
+                dlg.setOnCancelListener(new AlertDialog.OnCancelListener() {
+                    public void onCancel(DialogInterface dialog) {
+                        dialog.dismiss();
+                        request.sendPluginResult(request.result(0, null, null, -1));
+                    }
+                });
+
+                AlertDialog dialog = showDialog(dlg, request);
+                if (pageRequests) {
+                    dialog.getListView().setOnScrollListener(new AbsListView.OnScrollListener() {
+                        public void onScrollStateChanged(AbsListView view, int scrollState) {
+                        }
 
-                changeTextDirection(dlg);
+                        public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+                            if (stream.ended || stream.pageRequested || firstVisibleItem + visibleItemCount < totalItemCount - LIST_PAGE_THRESHOLD) {
+                                return;
+                            }
+                            stream.pageRequested = true;
+                            JSONObject event = new JSONObject();
+                            try {
+                                event.put("event", "page");
+                                event.put("loaded", totalItemCount);
+                            } catch (JSONException e) { e.printStackTrace(); }
+                            PluginResult result = new PluginResult(PluginResult.Status.OK, event);
+                            result.setKeepCallback(true);
+                            request.sendPluginResult(result);
+                        }
+                    });
+                }
             };
         };
+        this.scheduler.submit(request, runnable);
+    }
+
+    /**
+     * Adds a page of items to an open streaming list.
+     *
+     * @param listId            Id given to listBegin
+     * @param chunk             The items to add
+     * @param callbackContext   The callback context
+     */
+    public void listAppend(String listId, JSONArray chunk, CallbackContext callbackContext) {
+        ListStream stream = this.openListStream(listId);
+        if (stream == null) {
+            callbackContext.error("Unknown list: " + listId);
+            return;
+        }
+        this.appendToStream(stream, chunk);
+        callbackContext.success();
+    }
+
+    /**
+     * Marks a streaming list as complete so no more pages are requested.
+     *
+     * @param listId            Id given to listBegin
+     * @param callbackContext   The callback context
+     */
+    public void listEnd(String listId, CallbackContext callbackContext) {
+        ListStream stream = this.openListStream(listId);
+        if (stream == null) {
+            callbackContext.error("Unknown list: " + listId);
+            return;
+        }
+        stream.ended = true;
+        callbackContext.success();
+    }
+
+    /**
+     * Returns the stream with the given id, or null once its dialog is answered.
+     */
+    private ListStream openListStream(String listId) {
+        ListStream stream = this.listStreams.get(listId);
+        return stream == null || stream.request.isResolved() ? null : stream;
+    }
+
+    /**
+     * Copies a page out of its JSONArray on the calling thread and hands it to the
+     * adapter on the UI thread.
+     */
+    private void appendToStream(final ListStream stream, JSONArray chunk) {
+        final String[] items = new String[chunk.length()];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = chunk.optString(i);
+        }
+        this.cordova.getActivity().runOnUiThread(new Runnable() {
+            public void run() {
+                stream.adapter.append(items);
+                stream.pageRequested = false;
+            }
+        });
+    }
+
+    /**
+     * Closes the dialog opened with the given id, or takes it out of the queue.
+     * The dialog's own callback is answered with buttonIndex
+     * DialogRequest.BUTTON_CANCELLED; this one with whether the id was found.
+     *
+     * @param dialogId          The id from the dialog's options
+     * @param callbackContext   The callback context
+     */
+    public void dismiss(final String dialogId, final CallbackContext callbackContext) {
+        this.cordova.getActivity().runOnUiThread(new Runnable() {
+            public void run() {
+                callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, scheduler.cancel(dialogId)));
+            }
+        });
+    }
+
+    /**
+     * Cancels every queued and visible dialog like dismiss, and answers with how
+     * many there were.
+     */
+    public void dismissAll(final CallbackContext callbackContext) {
+        this.cordova.getActivity().runOnUiThread(new Runnable() {
+            public void run() {
+                callbackContext.success(scheduler.cancelAll());
+            }
+        });
+    }
+
+    /**
+     * Changes the title or message of a dialog in place. A visible dialog is
+     * updated without being rebuilt; a queued one is shown with the new text.
+     * Answers with whether the id was found. List dialogs have no message, as
+     * their rows take its place, so a message for one is rejected with an error
+     * and nothing is changed.
+     *
+     * @param dialogId          The id from the dialog's options
+     * @param title             The new title, or null to keep it
+     * @param message           The new message, or null to keep it
+     * @param callbackContext   The callback context
+     */
+    public void update(final String dialogId, final String title, final String message, final CallbackContext callbackContext) {
+        this.cordova.getActivity().runOnUiThread(new Runnable() {
+            public void run() {
+                DialogRequest request = scheduler.findById(dialogId);
+                if (request == null) {
+                    callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, false));
+                    return;
+                }
+                if (message != null && (request.action.equals("list") || request.action.equals("multiList"))) {
+                    callbackContext.error("A " + request.action + " dialog has no message to update");
+                    return;
+                }
+                if (title != null) {
+                    request.title = title;
+                }
+                if (message != null) {
+                    request.message = message;
+                }
+                AlertDialog dialog = request.dialog();
+                if (dialog != null) {
+                    if (title != null) {
+                        dialog.setTitle(title);
+                    }
+                    if (message != null && request.richMessage != null) {
+                        request.richMessage.setMessage(message);
+                    } else if (message != null) {
+                        dialog.setMessage(message);
+                    }
+                }
+                callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, true));
+            }
+        });
+    }
+
+    /**
+     * Builds a suggestion dictionary on the thread pool and registers it for
+     * prompt's suggestions option, replacing any dictionary with the same id.
+     * Answers with the number of entries.
+     *
+     * @param dictionaryId      The id prompt refers to the dictionary by
+     * @param entries           Strings or {text, weight} objects
+     * @param callbackContext   The callback context
+     */
+    public void registerSuggestions(final String dictionaryId, final JSONArray entries, final CallbackContext callbackContext) {
+        this.cordova.getThreadPool().execute(new Runnable() {
+            public void run() {
+                try {
+                    SuggestionIndex index = SuggestionIndex.build(entries);
+                    SuggestionIndex.register(dictionaryId, index);
+                    callbackContext.success(index.size());
+                } catch (JSONException e) {
+                    callbackContext.error(e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the text of an input, or the fallback when only whitespace was entered.
+     * The text is read once and passed on as a String, never as the live Editable.
+     */
+    private static String inputText(EditText input, String fallback) {
+        String text = input.getText().toString();
+        return text.trim().length() == 0 ? fallback : text;
+    }
+
+    /**
+     * State of a list opened with listBegin. The flags are only touched on the UI
+     * thread, apart from ended which is a plain latch.
+     */
+    private static class ListStream {
+        final DialogRequest request;
+        final ListItemAdapter adapter;
+        volatile boolean ended = false;
+        boolean pageRequested = false;
+
+        ListStream(DialogRequest request, int capacity) {
+            this.request = request;
+            this.adapter = new ListItemAdapter(capacity);
+        }
+    }
+
+    /**
+     * Runs a sequence of dialogs natively in one bridge call.
+     *
+     * Each step is {action, args, next} where action and args are the same as for a
+     * direct call to one of the dialog actions. After a step is answered the batch
+     * moves to next[buttonIndex] when next has that key: a step index, or anything
+     * else to stop. Without a matching key it moves to the following step.
+     *
+     * Each answered step is sent as {step, action, result} on the kept callback and
+     * the batch ends with {done: true, results: [...]}.
+     *
+     * With a batchId every step's dialog takes it as its id, so dismiss closes the
+     * step on screen. A step answered with BUTTON_CANCELLED that next does not map
+     * ends the batch.
+     *
+     * @param steps             The dialog specs
+     * @param batchId           The dialog id of every step, or null to keep their own
+     * @param callbackContext   The callback context
+     */
+    public void batch(JSONArray steps, String batchId, CallbackContext callbackContext) throws JSONException {
+        for (int i = 0; i < steps.length(); i++) {
+            String action = steps.getJSONObject(i).getString("action");
+            if (!DIALOG_ACTIONS.contains(action)) {
+                callbackContext.error("Unsupported batch action: " + action);
+                return;
+            }
+        }
+        new Batch(steps, batchId, callbackContext).run(0);
+    }
+
+    /**
+     * State of a running batch. Steps after the first are started from the UI
+     * thread while the previous dialog is delivering its result.
+     */
+    private class Batch {
+        final JSONArray steps;
+        final String id;
+        final CallbackContext callbackContext;
+        final JSONArray results = new JSONArray();
+        int executed = 0;
+
+        Batch(JSONArray steps, String id, CallbackContext callbackContext) {
+            this.steps = steps;
+            this.id = id;
+            this.callbackContext = callbackContext;
+        }
+
+        void run(final int index) {
+            if (index < 0 || index >= this.steps.length() || this.executed >= BATCH_MAX_STEPS) {
+                this.finish();
+                return;
+            }
+            this.executed++;
+            try {
+                JSONObject step = this.steps.getJSONObject(index);
+                final String action = step.getString("action");
+                JSONArray stepArgs = step.optJSONArray("args");
+                int optionsIndex = DialogTemplate.optionsIndex(action);
+                JSONArray args = new JSONArray();
+                for (int i = 0; stepArgs != null && i < stepArgs.length() && i < optionsIndex; i++) {
+                    args.put(stepArgs.opt(i));
+                }
+                // Step results are read natively, so they always use the JSON encoding.
+                // The options are copied; the steps can be run again.
+                JSONObject options = stepArgs != null ? stepArgs.optJSONObject(optionsIndex) : null;
+                options = options != null ? new JSONObject(options.toString()) : new JSONObject();
+                options.remove("compact");
+                if (this.id != null) {
+                    options.put("id", this.id);
+                }
+                if (args.length() == optionsIndex) {
+                    args.put(options);
+                }
+                actions.get(action).execute(args, new CallbackContext(this.callbackContext.getCallbackId(), webView) {
+                    @Override
+                    public void sendPluginResult(PluginResult pluginResult) {
+                        stepFinished(index, action, pluginResult);
+                    }
+                });
+            } catch (JSONException e) {
+                this.callbackContext.error("Invalid batch step " + index + ": " + e.getMessage());
+            }
+        }
+
+        void stepFinished(int index, String action, PluginResult pluginResult) {
+            if (pluginResult.getStatus() != PluginResult.Status.OK.ordinal()) {
+                this.callbackContext.error("Batch step " + index + " failed: " + pluginResult.getMessage());
+                return;
+            }
+            int buttonIndex = 0;
+            JSONObject entry = new JSONObject();
+            try {
+                Object value;
+                if (pluginResult.getMessageType() == PluginResult.MESSAGE_TYPE_JSON) {
+                    JSONObject result = new JSONObject(pluginResult.getMessage());
+                    buttonIndex = result.optInt("buttonIndex");
+                    value = result;
+                } else if (pluginResult.getMessageType() == PluginResult.MESSAGE_TYPE_NUMBER) {
+                    buttonIndex = Integer.parseInt(pluginResult.getMessage());
+                    value = buttonIndex;
+                } else {
+                    value = pluginResult.getMessage();
+                }
+                entry.put("step", index);
+                entry.put("action", action);
+                entry.put("result", value);
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+            this.results.put(entry);
+            PluginResult progress = new PluginResult(PluginResult.Status.OK, entry);
+            progress.setKeepCallback(true);
+            this.callbackContext.sendPluginResult(progress);
+
+            JSONObject next = this.steps.optJSONObject(index).optJSONObject("next");
+            String key = String.valueOf(buttonIndex);
+            if (next != null && next.has(key)) {
+                if (next.opt(key) instanceof Number) {
+                    this.run(((Number) next.opt(key)).intValue());
+                } else {
+                    this.finish();
+                }
+            } else if (buttonIndex == DialogRequest.BUTTON_CANCELLED) {
+                // Closed by dismiss, dismissAll or teardown, not by the user.
+                this.finish();
+            } else {
+                this.run(index + 1);
+            }
+        }
+
+        void finish() {
+            JSONObject done = new JSONObject();
+            try {
+                done.put("done", true);
+                done.put("results", this.results);
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+            this.callbackContext.success(done);
+        }
+    }
+
+    /**
+     * Show the spinner.
+     *
+     * @param title     Title of the dialog
+     * @param message   The message of the dialog
+     */
+    public synchronized void activityStart(final String title, final String message) {
+        final Notification notification = this;
+        final CordovaInterface cordova = this.cordova;
+        Runnable runnable = new Runnable() {
+            public void run() {
+                if (notification.spinnerDialog != null) {
+                    notification.spinnerDialog.dismiss();
+                }
+                notification.spinnerDialog = createProgressDialog(cordova);
+                notification.spinnerDialog.setTitle(title);
+                notification.spinnerDialog.setMessage(message);
+                notification.spinnerDialog.setCancelable(true);
+                notification.spinnerDialog.setIndeterminate(true);
+                notification.spinnerDialog.setOnCancelListener(
+                        new DialogInterface.OnCancelListener() {
+                            public void onCancel(DialogInterface dialog) {
+                                notification.spinnerDialog = null;
+                            }
+                        });
+                notification.spinnerDialog.show();
+            }
+        };
         this.cordova.getActivity().runOnUiThread(runnable);
     }
-    
+
+    /**
+     * Stop spinner.
+     */
+    public synchronized void activityStop() {
+        final Notification notification = this;
+        this.cordova.getActivity().runOnUiThread(new Runnable() {
+            public void run() {
+                if (notification.spinnerDialog != null) {
+                    notification.spinnerDialog.dismiss();
+                    notification.spinnerDialog = null;
+                }
+            }
+        });
+    }
+
+    /**
+     * Show the progress dialog.
+     *
+     * @param title     Title of the dialog
+     * @param message   The message of the dialog
+     */
+    public synchronized void progressStart(final String title, final String message) {
+        final Notification notification = this;
+        final CordovaInterface cordova = this.cordova;
+        this.progressLatest = 0;
+        Runnable runnable = new Runnable() {
+            public void run() {
+                if (notification.progressDialog != null) {
+                    notification.progressDialog.dismiss();
+                }
+                if (HAS_CHOREOGRAPHER) {
+                    notification.choreographer = Choreographer.getInstance();
+                }
+                notification.progressDialog = createProgressDialog(cordova);
+                notification.progressDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+                notification.progressDialog.setTitle(title);
+                notification.progressDialog.setMessage(message);
+                notification.progressDialog.setCancelable(true);
+                notification.progressDialog.setMax(100);
+                notification.progressDialog.setProgress(0);
+                notification.progressDialog.setOnCancelListener(
+                        new DialogInterface.OnCancelListener() {
+                            public void onCancel(DialogInterface dialog) {
+                                notification.progressDialog = null;
+                            }
+                        });
+                notification.progressDialog.show();
+            }
+        };
+        this.cordova.getActivity().runOnUiThread(runnable);
+    }
+
+    /**
+     * Set value of progress bar.
+     *
+     * Only the latest value is kept. At most one update is waiting for the next
+     * frame at any time; values arriving while one is waiting just replace the
+     * value it will apply, so a fast caller never floods the main looper.
+     *
+     * @param value     0-100
+     */
+    public void progressValue(int value) {
+        this.progressLatest = Math.max(0, Math.min(value, 100));
+        if (!this.progressUpdateScheduled.compareAndSet(false, true)) {
+            this.progressUpdatesCoalesced.incrementAndGet();
+            return;
+        }
+        Choreographer choreographer = this.choreographer;
+        if (choreographer != null) {
+            choreographer.postFrameCallback(this.progressFrameCallback);
+        } else {
+            this.cordova.getActivity().runOnUiThread(this.progressUpdate);
+        }
+    }
+
+    /**
+     * Stop progress dialog.
+     */
+    public synchronized void progressStop() {
+        final Notification notification = this;
+        this.cordova.getActivity().runOnUiThread(new Runnable() {
+            public void run() {
+                if (notification.progressDialog != null) {
+                    notification.progressDialog.dismiss();
+                    notification.progressDialog = null;
+                }
+            }
+        });
+    }
+
+    private final Runnable progressUpdate = new Runnable() {
+        public void run() {
+            progressUpdateScheduled.set(false);
+            if (progressDialog != null) {
+                progressDialog.setProgress(progressLatest);
+                progressUpdatesApplied.incrementAndGet();
+            }
+        }
+    };
+
+    @SuppressLint("NewApi")
+    private final Choreographer.FrameCallback progressFrameCallback = HAS_CHOREOGRAPHER ? new Choreographer.FrameCallback() {
+        public void doFrame(long frameTimeNanos) {
+            progressUpdate.run();
+        }
+    } : null;
+
+    private JSONObject progressStats() throws JSONException {
+        JSONObject stats = new JSONObject();
+        stats.put("applied", this.progressUpdatesApplied.get());
+        stats.put("coalesced", this.progressUpdatesCoalesced.get());
+        return stats;
+    }
+
     /**
      * 
      * @param message
@@ -402,15 +1447,14 @@ public class Notification extends CordovaPlugin {
     public synchronized void login(final String title, final String message, final JSONArray buttonLabels, final JSONArray defaultTexts,final CallbackContext callbackContext) {
       	
         final CordovaInterface cordova = this.cordova;
+        final DialogRequest request = this.requestFor("login", callbackContext);
        
         Runnable runnable = new Runnable() {
             public void run() {
-            	LinearLayout layout = new LinearLayout(cordova.getActivity());
-                layout.setOrientation(LinearLayout.VERTICAL);
-                layout.setPadding(10, 0, 10, 0);
-                final EditText usernameInput = new EditText(cordova.getActivity());
+            	final LinearLayout layout = viewPool.acquireLoginLayout(cordova.getActivity());
+                final EditText usernameInput = (EditText) layout.getChildAt(0);
                 usernameInput.setInputType(InputType.TYPE_CLASS_TEXT|InputType.TYPE_TEXT_VARIATION_NORMAL);
-                final EditText passwordInput = new EditText(cordova.getActivity());
+                final EditText passwordInput = (EditText) layout.getChildAt(1);
                 passwordInput.setInputType(InputType.TYPE_CLASS_TEXT|InputType.TYPE_TEXT_VARIATION_PASSWORD);
                 try {
                     usernameInput.setHint("ID");
@@ -419,9 +1463,6 @@ public class Notification extends CordovaPlugin {
                     passwordInput.setText(defaultTexts.getString(1));
                 } catch (JSONException e1){}
 
-                layout.addView(usernameInput, new LinearLayout.LayoutParams(LinearLayout.LayoutParams.MATCH_PARENT,LinearLayout.LayoutParams.WRAP_CONTENT));
-                layout.addView(passwordInput, new LinearLayout.LayoutParams(LinearLayout.LayoutParams.MATCH_PARENT,LinearLayout.LayoutParams.WRAP_CONTENT));
-
                 AlertDialog.Builder dlg = createDialog(cordova); // new AlertDialog.Builder(cordova.getActivity(), AlertDialog.THEME_DEVICE_DEFAULT_LIGHT);
                 dlg.setMessage(message);
                 dlg.setTitle(title);
@@ -429,19 +1470,17 @@ public class Notification extends CordovaPlugin {
                 
                 dlg.setView(layout);
                 
-                final JSONObject result = new JSONObject();
-                
                     try {
                         dlg.setNegativeButton(buttonLabels.getString(0),
                             new AlertDialog.OnClickListener() {
                                 public void onClick(DialogInterface dialog, int which) {
                                     dialog.dismiss();
-                                    try {
-                                        result.put("buttonIndex",1);
-                                        result.put("input1", usernameInput.getText());		
-                                        result.put("input2", passwordInput.getText());		
-                                    } catch (JSONException e) { e.printStackTrace(); }
-                                    callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, result));
+                                    String username = usernameInput.getText().toString();
+                                    String password = passwordInput.getText().toString();
+                                    if (request.credentials != null) {
+                                        credentials.save(request.credentials, username, password);
+                                    }
+                                    request.sendPluginResult(request.result(1, username, password, -1));
                                 }
                             });
                     } catch (JSONException e) { }
@@ -451,10 +1490,7 @@ public class Notification extends CordovaPlugin {
                             new AlertDialog.OnClickListener() {
                                 public void onClick(DialogInterface dialog, int which) {
                                     dialog.dismiss();
-                                    try {
-                                        result.put("buttonIndex",3);
-                                    } catch (JSONException e) { e.printStackTrace(); }
-                                    callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, result));
+                                    request.sendPluginResult(request.result(3, null, null, -1));
                                 }
                             });
                     } catch (JSONException e) { }
@@ -462,39 +1498,92 @@ public class Notification extends CordovaPlugin {
                 dlg.setOnCancelListener(new AlertDialog.OnCancelListener() {
                     public void onCancel(DialogInterface dialog){
                         dialog.dismiss();
-                        try {
-                            result.put("buttonIndex",0);
-                        } catch (JSONException e) { e.printStackTrace(); }
-                        callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, result));
+                        request.sendPluginResult(request.result(0, null, null, -1));
                     }
                 });
 
-                changeTextDirection(dlg);
+                final AlertDialog dialog = showDialog(dlg, request);
+                if (request.credentials != null) {
+                    // Stored credentials fill the fields left empty by defaultTexts.
+                    credentials.load(request.credentials, new CredentialStore.Listener() {
+                        public void onLoaded(char[] username, char[] password) {
+                            if (dialog.isShowing()) {
+                                if (usernameInput.getText().length() == 0) {
+                                    usernameInput.setText(username, 0, username.length);
+                                }
+                                if (passwordInput.getText().length() == 0) {
+                                    passwordInput.setText(password, 0, password.length);
+                                }
+                            }
+                            Arrays.fill(username, '\0');
+                            Arrays.fill(password, '\0');
+                        }
+                    });
+                }
+                final InputValidator.Binding validation = InputValidator.bind(dialog, DialogInterface.BUTTON_NEGATIVE, request.validators, usernameInput, passwordInput);
+                dialog.setOnDismissListener(new DialogInterface.OnDismissListener() {
+                    public void onDismiss(DialogInterface dialog) {
+                        if (validation != null) {
+                            validation.unbind();
+                        }
+                        viewPool.releaseLoginLayout(layout);
+                    }
+                });
             };
         };
-        this.cordova.getActivity().runOnUiThread(runnable);
+        this.scheduler.submit(request, runnable);
     }
     
     
+    /**
+     * Creates a builder for the device default light dialog theme where the platform has it.
+     */
     @SuppressLint("NewApi")
     private AlertDialog.Builder createDialog(CordovaInterface cordova) {
-        int currentapiVersion = android.os.Build.VERSION.SDK_INT;
-        if (currentapiVersion >= android.os.Build.VERSION_CODES.HONEYCOMB) {
+        if (HAS_DEVICE_DEFAULT_THEME) {
             return new AlertDialog.Builder(cordova.getActivity(), AlertDialog.THEME_DEVICE_DEFAULT_LIGHT);
         } else {
             return new AlertDialog.Builder(cordova.getActivity());
         }
     }
-    
+
     @SuppressLint("NewApi")
-    private void changeTextDirection(Builder dlg){
-        int currentapiVersion = android.os.Build.VERSION.SDK_INT;
-        dlg.create();
-        AlertDialog dialog =  dlg.show();
-        if (currentapiVersion >= android.os.Build.VERSION_CODES.JELLY_BEAN_MR1) {
-            TextView messageview = (TextView)dialog.findViewById(android.R.id.message);
-            if(messageview != null)
-            messageview.setTextDirection(android.view.View.TEXT_DIRECTION_LOCALE);
+    private ProgressDialog createProgressDialog(CordovaInterface cordova) {
+        if (HAS_DEVICE_DEFAULT_THEME) {
+            return new ProgressDialog(cordova.getActivity(), AlertDialog.THEME_DEVICE_DEFAULT_LIGHT);
+        } else {
+            return new ProgressDialog(cordova.getActivity());
+        }
+    }
+
+    /**
+     * Creates the dialog exactly once and shows it. The message is laid out in the
+     * locale's text direction; the title, buttons and inputs keep their own.
+     *
+     * @param dlg               The configured builder
+     * @param request           The request the dialog answers
+     */
+    @SuppressLint("NewApi")
+    private AlertDialog showDialog(Builder dlg, DialogRequest request){
+        // Text changed with update() while the request was queued.
+        if (request.title != null) {
+            dlg.setTitle(request.title);
+        }
+        if (request.message != null && request.richMessage != null) {
+            request.richMessage.setMessage(request.message);
+        } else if (request.message != null) {
+            dlg.setMessage(request.message);
+        }
+        AlertDialog dialog = dlg.create();
+        request.attach(dialog);
+        dialog.show();
+        if (HAS_TEXT_DIRECTION) {
+            // The content view exists once shown; the first layout pass is still to come.
+            TextView messageView = (TextView) dialog.findViewById(android.R.id.message);
+            if (messageView != null) {
+                messageView.setTextDirection(View.TEXT_DIRECTION_LOCALE);
+            }
         }
+        return dialog;
     }
 }
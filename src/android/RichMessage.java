@@ -0,0 +1,378 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Html;
+import android.text.PrecomputedText;
+import android.text.method.LinkMovementMethod;
+import android.util.LruCache;
+import android.util.TypedValue;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.ListView;
+import android.widget.TextView;
+
+/**
+ * A long or rich dialog message, shown as a scrolling list of paragraphs.
+ *
+ * The message is parsed (format "html", "markdown" or "text") into a Spanned
+ * and cut into paragraphs on a background thread. The list only lays out the
+ * paragraphs on screen, and on API 28+ the paragraphs are also measured ahead
+ * of time with PrecomputedText, so even a message of a few hundred kilobytes
+ * opens without stalling the UI thread. Parsed messages are cached by the
+ * SHA-1 of their format and text, so showing one again skips the parse.
+ */
+class RichMessage {
+
+    private static final int CACHE_CHARS = 2 * 1024 * 1024;
+    private static final int MAX_CHUNK = 4096;
+    private static final int TEXT_SP = 16;
+    private static final int PADDING_DP = 20;
+    private static final boolean HAS_PRECOMPUTED_TEXT = Build.VERSION.SDK_INT >= Build.VERSION_CODES.P;
+    private static final boolean HAS_TEXT_DIRECTION = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1;
+
+    private static final LruCache<String, CharSequence[]> CACHE = new LruCache<String, CharSequence[]>(CACHE_CHARS) {
+        @Override
+        protected int sizeOf(String key, CharSequence[] chunks) {
+            int chars = 0;
+            for (CharSequence chunk : chunks) {
+                chars += chunk.length();
+            }
+            return Math.max(chars, 1);
+        }
+    };
+
+    private static final Pattern HEADING = Pattern.compile("^(#{1,6})\\s+(.*)$");
+    private static final Pattern BULLET = Pattern.compile("^[-*+]\\s+(.*)$");
+    private static final Pattern CODE = Pattern.compile("`([^`]+)`");
+    private static final Pattern BOLD = Pattern.compile("\\*\\*(.+?)\\*\\*|(?<!\\w)__(.+?)__(?!\\w)");
+    private static final Pattern ITALIC = Pattern.compile("\\*(.+?)\\*|(?<!\\w)_(.+?)_(?!\\w)");
+    private static final Pattern LINK = Pattern.compile("\\[([^\\]]+)\\]\\(([^)\\s]+)\\)");
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final AtomicInteger generation = new AtomicInteger();
+    private final String format;
+    private final ExecutorService executor;
+    private CharSequence[] chunks;
+    private CharSequence[] precomputed;
+    private int measuring = -1;
+    private Adapter adapter;
+
+    private RichMessage(String format, ExecutorService executor) {
+        this.format = format;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts parsing a message in the background, unless it is cached.
+     *
+     * @param format            "html", "markdown" or "text"
+     * @param message           The message source
+     * @param executor          Where parsing and measuring run, normally cordova.getThreadPool()
+     */
+    static RichMessage prepare(String format, String message, ExecutorService executor) {
+        RichMessage rich = new RichMessage(format, executor);
+        rich.setMessage(message);
+        return rich;
+    }
+
+    /**
+     * Replaces the message. A view already created shows the new text once it
+     * is parsed; a parse still running for an older message is ignored. The
+     * cache key is hashed on the executor too, so this is cheap on the UI thread
+     * however long the message is.
+     */
+    void setMessage(final String message) {
+        final int current = this.generation.incrementAndGet();
+        this.executor.execute(new Runnable() {
+            public void run() {
+                if (generation.get() != current) {
+                    return;
+                }
+                String key = hash(format + '\u0000' + message);
+                CharSequence[] parsed = CACHE.get(key);
+                if (parsed == null) {
+                    parsed = split(parse(format, message));
+                    CACHE.put(key, parsed);
+                }
+                ready(current, parsed);
+            }
+        });
+    }
+
+    private void ready(final int current, final CharSequence[] parsed) {
+        this.handler.post(new Runnable() {
+            public void run() {
+                if (generation.get() != current) {
+                    return;
+                }
+                chunks = parsed;
+                precomputed = null;
+                if (adapter != null) {
+                    adapter.notifyDataSetChanged();
+                    precompute(current, adapter.params);
+                }
+            }
+        });
+    }
+
+    /**
+     * Creates the scrolling view for a dialog. UI thread only.
+     *
+     * @param context           The dialog's themed context, so the rows are
+     *                          measured and drawn with the dialog's text style
+     */
+    @SuppressLint("NewApi")
+    View createView(Context context) {
+        ListView list = new ListView(context);
+        list.setDividerHeight(0);
+        this.adapter = new Adapter();
+        if (HAS_PRECOMPUTED_TEXT) {
+            // Paragraphs are measured for exactly the TextView the rows use.
+            this.adapter.params = createRow(context).getTextMetricsParams();
+        }
+        list.setAdapter(this.adapter);
+        if (this.chunks != null) {
+            precompute(this.generation.get(), this.adapter.params);
+        }
+        return list;
+    }
+
+    /**
+     * Measures every paragraph in the background, then lets the rows use the
+     * measured text. UI thread only.
+     */
+    @SuppressLint("NewApi")
+    private void precompute(final int current, final PrecomputedText.Params params) {
+        if (params == null || this.measuring == current) {
+            return;
+        }
+        this.measuring = current;
+        final CharSequence[] source = this.chunks;
+        this.executor.execute(new Runnable() {
+            public void run() {
+                final CharSequence[] measured = new CharSequence[source.length];
+                for (int i = 0; i < source.length; i++) {
+                    if (generation.get() != current) {
+                        return;
+                    }
+                    measured[i] = PrecomputedText.create(source[i], params);
+                }
+                handler.post(new Runnable() {
+                    public void run() {
+                        if (generation.get() == current && chunks == source) {
+                            precomputed = measured;
+                            if (adapter != null) {
+                                adapter.notifyDataSetChanged();
+                            }
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    @SuppressLint("NewApi")
+    private static TextView createRow(Context context) {
+        TextView row = new TextView(context);
+        int padding = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, PADDING_DP, context.getResources().getDisplayMetrics());
+        row.setPadding(padding, 0, padding, padding / 2);
+        row.setTextSize(TypedValue.COMPLEX_UNIT_SP, TEXT_SP);
+        // Set rather than inherited from the window, so a detached row reports
+        // the same text metrics params as the rows on screen.
+        if (HAS_TEXT_DIRECTION) {
+            row.setTextDirection(View.TEXT_DIRECTION_LOCALE);
+        }
+        row.setMovementMethod(LinkMovementMethod.getInstance());
+        return row;
+    }
+
+    private class Adapter extends BaseAdapter {
+
+        PrecomputedText.Params params;
+
+        public int getCount() {
+            return chunks == null ? 0 : chunks.length;
+        }
+
+        public CharSequence getItem(int position) {
+            return precomputed != null ? precomputed[position] : chunks[position];
+        }
+
+        public long getItemId(int position) {
+            return position;
+        }
+
+        public View getView(int position, View convertView, ViewGroup parent) {
+            TextView row = (TextView) convertView;
+            if (row == null) {
+                row = createRow(parent.getContext());
+            }
+            row.setText(getItem(position));
+            return row;
+        }
+    }
+
+    //--------------------------------------------------------------------------
+    // PARSING, BACKGROUND THREAD
+    //--------------------------------------------------------------------------
+
+    @SuppressWarnings("deprecation")
+    @SuppressLint("NewApi")
+    private static CharSequence parse(String format, String message) {
+        if ("text".equals(format)) {
+            return message;
+        }
+        String html = "markdown".equals(format) ? markdownToHtml(message) : message;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            return Html.fromHtml(html, Html.FROM_HTML_MODE_LEGACY);
+        }
+        return Html.fromHtml(html);
+    }
+
+    /**
+     * Cuts text into paragraphs at blank lines, and paragraphs longer than
+     * MAX_CHUNK at the last line break or space before the limit. Spans are kept.
+     */
+    static CharSequence[] split(CharSequence text) {
+        String plain = text.toString();
+        ArrayList<CharSequence> chunks = new ArrayList<CharSequence>();
+        int start = 0;
+        int length = plain.length();
+        while (start < length) {
+            int end = plain.indexOf("\n\n", start);
+            end = end < 0 ? length : end;
+            if (end - start > MAX_CHUNK) {
+                int limit = start + MAX_CHUNK;
+                int cut = plain.lastIndexOf('\n', limit);
+                if (cut <= start) {
+                    cut = plain.lastIndexOf(' ', limit);
+                }
+                end = cut <= start ? limit : cut;
+            }
+            if (end > start) {
+                chunks.add(text.subSequence(start, end));
+            }
+            start = end;
+            while (start < length && (plain.charAt(start) == '\n' || plain.charAt(start) == ' ')) {
+                start++;
+            }
+        }
+        return chunks.toArray(new CharSequence[chunks.size()]);
+    }
+
+    /**
+     * Converts the common subset of Markdown to HTML: # headings, - lists,
+     * **bold**, *italic*, `code`, [links](url) and blank-line paragraphs.
+     */
+    static String markdownToHtml(String markdown) {
+        StringBuilder html = new StringBuilder(markdown.length() + markdown.length() / 4);
+        boolean inParagraph = false;
+        for (String line : markdown.split("\n")) {
+            String trimmed = line.trim();
+            if (trimmed.length() == 0) {
+                if (inParagraph) {
+                    html.append("</p>");
+                    inParagraph = false;
+                }
+                continue;
+            }
+            Matcher heading = HEADING.matcher(trimmed);
+            if (heading.matches()) {
+                if (inParagraph) {
+                    html.append("</p>");
+                    inParagraph = false;
+                }
+                int level = heading.group(1).length();
+                html.append("<h").append(level).append('>').append(inline(heading.group(2))).append("</h").append(level).append('>');
+                continue;
+            }
+            if (!inParagraph) {
+                html.append("<p>");
+                inParagraph = true;
+            } else {
+                html.append("<br>");
+            }
+            Matcher bullet = BULLET.matcher(trimmed);
+            if (bullet.matches()) {
+                html.append("&#8226; ").append(inline(bullet.group(1)));
+            } else {
+                html.append(inline(trimmed));
+            }
+        }
+        if (inParagraph) {
+            html.append("</p>");
+        }
+        return html.toString();
+    }
+
+    private static String inline(String text) {
+        String html = escape(text);
+        html = CODE.matcher(html).replaceAll("<tt>$1</tt>");
+        html = LINK.matcher(html).replaceAll("<a href=\"$2\">$1</a>");
+        html = BOLD.matcher(html).replaceAll("<b>$1$2</b>");
+        html = ITALIC.matcher(html).replaceAll("<i>$1$2</i>");
+        return html;
+    }
+
+    private static String escape(String text) {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<': escaped.append("&lt;"); break;
+                case '>': escaped.append("&gt;"); break;
+                case '&': escaped.append("&amp;"); break;
+                case '"': escaped.append("&quot;"); break;
+                default: escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static String hash(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(text.getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return text;
+        } catch (UnsupportedEncodingException e) {
+            return text;
+        }
+    }
+}
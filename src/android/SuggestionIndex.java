@@ -0,0 +1,324 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.EditText;
+import android.widget.ListPopupWindow;
+
+/**
+ * A prefix index over a suggestion dictionary registered from JavaScript.
+ *
+ * Entries are packed into parallel arrays sorted by their lower-cased text, so
+ * a lookup is one binary search for the first match followed by a scan of the
+ * matching run. One- and two-letter prefixes can match most of a large
+ * dictionary, so their best entries are ranked once when the index is built
+ * and looked up directly. Indexes are built once, off the UI thread, and kept
+ * for the life of the process under the id they were registered with.
+ */
+class SuggestionIndex {
+
+    static final int DEFAULT_LIMIT = 8;
+
+    /** Prefixes up to this length get their best entries ranked at build time. */
+    private static final int SHORT_PREFIX = 2;
+    /** Number of entries ranked per short prefix; larger limits scan the run. */
+    private static final int RANKED = 64;
+    /** Short prefixes matching fewer entries than this are cheap to scan. */
+    private static final int MIN_RANKED_RUN = 512;
+
+    private static final ConcurrentHashMap<String, SuggestionIndex> REGISTRY = new ConcurrentHashMap<String, SuggestionIndex>();
+
+    private final String[] keys;
+    private final String[] values;
+    private final int[] weights;
+    private final HashMap<String, int[]> ranked = new HashMap<String, int[]>();
+
+    private SuggestionIndex(String[] keys, String[] values, int[] weights) {
+        this.keys = keys;
+        this.values = values;
+        this.weights = weights;
+        for (int length = 1; length <= SHORT_PREFIX; length++) {
+            int i = 0;
+            while (i < keys.length) {
+                if (keys[i].length() < length) {
+                    i++;
+                    continue;
+                }
+                String prefix = keys[i].substring(0, length);
+                int end = i + 1;
+                while (end < keys.length && keys[end].startsWith(prefix)) {
+                    end++;
+                }
+                if (end - i >= MIN_RANKED_RUN) {
+                    this.ranked.put(prefix, rank(i, end, RANKED));
+                }
+                i = end;
+            }
+        }
+    }
+
+    /**
+     * Builds an index from an array of strings or {text, weight} objects.
+     * Heavier entries are suggested first. Slow for large dictionaries; never
+     * call on the UI thread.
+     */
+    static SuggestionIndex build(JSONArray entries) throws JSONException {
+        final int count = entries.length();
+        final String[] keys = new String[count];
+        String[] texts = new String[count];
+        int[] entryWeights = new int[count];
+        boolean weighted = false;
+        for (int i = 0; i < count; i++) {
+            Object entry = entries.get(i);
+            if (entry instanceof JSONObject) {
+                texts[i] = ((JSONObject) entry).getString("text");
+                entryWeights[i] = ((JSONObject) entry).optInt("weight", 0);
+                weighted |= entryWeights[i] != 0;
+            } else {
+                texts[i] = entry.toString();
+            }
+            keys[i] = texts[i].toLowerCase(Locale.ROOT);
+        }
+
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return keys[a].compareTo(keys[b]);
+            }
+        });
+
+        String[] sortedKeys = new String[count];
+        String[] sortedValues = new String[count];
+        int[] sortedWeights = weighted ? new int[count] : null;
+        for (int i = 0; i < count; i++) {
+            int from = order[i];
+            sortedKeys[i] = keys[from];
+            sortedValues[i] = texts[from];
+            if (weighted) {
+                sortedWeights[i] = entryWeights[from];
+            }
+        }
+        return new SuggestionIndex(sortedKeys, sortedValues, sortedWeights);
+    }
+
+    static void register(String id, SuggestionIndex index) {
+        REGISTRY.put(id, index);
+    }
+
+    static boolean unregister(String id) {
+        return REGISTRY.remove(id) != null;
+    }
+
+    /**
+     * @return                  The index registered under the id, or null.
+     */
+    static SuggestionIndex get(String id) {
+        return id == null ? null : REGISTRY.get(id);
+    }
+
+    int size() {
+        return this.keys.length;
+    }
+
+    /**
+     * Returns up to limit entries starting with the prefix, ignoring case,
+     * heaviest first, then shortest, then in sorted order. Thread safe.
+     */
+    String[] lookup(CharSequence prefix, int limit) {
+        String key = prefix.toString().toLowerCase(Locale.ROOT);
+        if (key.length() == 0 || limit <= 0) {
+            return new String[0];
+        }
+        int[] best = this.ranked.get(key);
+        if (best == null || best.length < limit) {
+            int low = 0;
+            int high = this.keys.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (this.keys[mid].compareTo(key) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            int end = low;
+            while (end < this.keys.length && this.keys[end].startsWith(key)) {
+                end++;
+            }
+            best = rank(low, end, limit);
+        }
+
+        String[] suggestions = new String[Math.min(limit, best.length)];
+        for (int i = 0; i < suggestions.length; i++) {
+            suggestions[i] = this.values[best[i]];
+        }
+        return suggestions;
+    }
+
+    /**
+     * Returns the indexes of the best limit entries between from and to, best first.
+     */
+    private int[] rank(int from, int to, int limit) {
+        // Small insertion-sorted top list; limit is a handful of rows.
+        int[] best = new int[Math.min(limit, to - from)];
+        int found = 0;
+        for (int i = from; i < to; i++) {
+            if (found == best.length && !ranksBefore(i, best[found - 1])) {
+                continue;
+            }
+            int slot = found < best.length ? found++ : found - 1;
+            while (slot > 0 && ranksBefore(i, best[slot - 1])) {
+                best[slot] = best[slot - 1];
+                slot--;
+            }
+            best[slot] = i;
+        }
+        return best;
+    }
+
+    private boolean ranksBefore(int a, int b) {
+        if (this.weights != null && this.weights[a] != this.weights[b]) {
+            return this.weights[a] > this.weights[b];
+        }
+        int lengthA = this.values[a].length();
+        int lengthB = this.values[b].length();
+        return lengthA != lengthB ? lengthA < lengthB : a < b;
+    }
+
+    /**
+     * Shows suggestions from an index under an input of a shown dialog.
+     *
+     * Every edit hands the lookup to a background executor; only the result of
+     * the latest edit is shown, older ones are dropped when they come back.
+     * Picking a suggestion replaces the input text. UI thread only, apart from
+     * the lookups themselves.
+     */
+    static class Popup implements TextWatcher, AdapterView.OnItemClickListener {
+
+        private final AtomicInteger generation = new AtomicInteger();
+        private final ExecutorService executor;
+        private final SuggestionIndex index;
+        private final int limit;
+        private final EditText input;
+        private final ListPopupWindow popup;
+        private final ListItemAdapter adapter;
+        private boolean choosing = false;
+
+        /**
+         * @param executor          Where lookups run, normally cordova.getThreadPool()
+         * @param index             The dictionary to suggest from
+         * @param limit             Maximum number of suggestions shown
+         * @param input             The input to complete
+         */
+        Popup(ExecutorService executor, SuggestionIndex index, int limit, EditText input) {
+            this.executor = executor;
+            this.index = index;
+            this.limit = limit > 0 ? limit : DEFAULT_LIMIT;
+            this.input = input;
+            this.adapter = new ListItemAdapter(this.limit);
+            this.popup = new ListPopupWindow(input.getContext());
+            this.popup.setAnchorView(input);
+            this.popup.setAdapter(this.adapter);
+            this.popup.setInputMethodMode(ListPopupWindow.INPUT_METHOD_NEEDED);
+            this.popup.setOnItemClickListener(this);
+            input.addTextChangedListener(this);
+        }
+
+        public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+        }
+
+        public void onTextChanged(CharSequence s, int start, int before, int count) {
+        }
+
+        public void afterTextChanged(Editable s) {
+            final int current = this.generation.incrementAndGet();
+            if (this.choosing) {
+                return;
+            }
+            final String prefix = s.toString();
+            if (prefix.length() == 0) {
+                this.popup.dismiss();
+                return;
+            }
+            this.executor.execute(new Runnable() {
+                public void run() {
+                    if (generation.get() != current) {
+                        return;
+                    }
+                    final String[] suggestions = index.lookup(prefix, limit);
+                    input.post(new Runnable() {
+                        public void run() {
+                            if (generation.get() == current) {
+                                show(suggestions);
+                            }
+                        }
+                    });
+                }
+            });
+        }
+
+        private void show(String[] suggestions) {
+            if (suggestions.length == 0) {
+                this.popup.dismiss();
+                return;
+            }
+            this.adapter.replace(suggestions);
+            if (!this.popup.isShowing()) {
+                this.popup.show();
+            }
+        }
+
+        public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+            String text = this.adapter.getItem(position);
+            this.choosing = true;
+            this.input.setText(text);
+            this.input.setSelection(text.length());
+            this.choosing = false;
+            this.popup.dismiss();
+        }
+
+        /**
+         * Drops any lookup still running and closes the popup.
+         */
+        void unbind() {
+            this.generation.incrementAndGet();
+            this.input.removeTextChangedListener(this);
+            this.popup.dismiss();
+        }
+    }
+}
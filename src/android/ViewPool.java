@@ -0,0 +1,144 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package jp.watnow.plugins.dialog;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+
+import android.app.Activity;
+import android.text.InputType;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.EditText;
+import android.widget.LinearLayout;
+
+/**
+ * Keeps a few reset input views around so prompt and login dialogs don't
+ * build them from scratch every time.
+ *
+ * Views belong to the activity they were created with. The pool forgets them
+ * when a different activity asks for a view or when it is invalidated, for
+ * example after a configuration change. Must only be used on the UI thread.
+ */
+class ViewPool {
+
+    public static final int DEFAULT_SIZE = 2;
+
+    private final int size;
+    private WeakReference<Activity> owner = new WeakReference<Activity>(null);
+    private final ArrayDeque<EditText> inputs = new ArrayDeque<EditText>();
+    private final ArrayDeque<LinearLayout> loginLayouts = new ArrayDeque<LinearLayout>();
+
+    ViewPool(int size) {
+        this.size = Math.max(size, 0);
+    }
+
+    /**
+     * Creates the pooled views ahead of the first dialog.
+     */
+    void prefill(Activity activity) {
+        bind(activity);
+        while (this.inputs.size() < this.size) {
+            this.inputs.add(newInput(activity));
+        }
+        while (this.loginLayouts.size() < this.size) {
+            this.loginLayouts.add(newLoginLayout(activity));
+        }
+    }
+
+    EditText acquireInput(Activity activity) {
+        bind(activity);
+        EditText input = this.inputs.poll();
+        return input != null ? input : newInput(activity);
+    }
+
+    void releaseInput(EditText input) {
+        detach(input);
+        reset(input);
+        if (this.inputs.size() < this.size && input.getContext() == this.owner.get()) {
+            this.inputs.add(input);
+        }
+    }
+
+    /**
+     * Returns a vertical layout holding the username and password inputs.
+     */
+    LinearLayout acquireLoginLayout(Activity activity) {
+        bind(activity);
+        LinearLayout layout = this.loginLayouts.poll();
+        return layout != null ? layout : newLoginLayout(activity);
+    }
+
+    void releaseLoginLayout(LinearLayout layout) {
+        detach(layout);
+        reset((EditText) layout.getChildAt(0));
+        reset((EditText) layout.getChildAt(1));
+        if (this.loginLayouts.size() < this.size && layout.getContext() == this.owner.get()) {
+            this.loginLayouts.add(layout);
+        }
+    }
+
+    /**
+     * Drops every pooled view.
+     */
+    void invalidate() {
+        this.inputs.clear();
+        this.loginLayouts.clear();
+        this.owner = new WeakReference<Activity>(null);
+    }
+
+    private void bind(Activity activity) {
+        if (this.owner.get() != activity) {
+            invalidate();
+            this.owner = new WeakReference<Activity>(activity);
+        }
+    }
+
+    private static LinearLayout newLoginLayout(Activity activity) {
+        LinearLayout layout = new LinearLayout(activity);
+        layout.setOrientation(LinearLayout.VERTICAL);
+        layout.setPadding(10, 0, 10, 0);
+        layout.addView(newInput(activity), new LinearLayout.LayoutParams(LinearLayout.LayoutParams.MATCH_PARENT,LinearLayout.LayoutParams.WRAP_CONTENT));
+        layout.addView(newInput(activity), new LinearLayout.LayoutParams(LinearLayout.LayoutParams.MATCH_PARENT,LinearLayout.LayoutParams.WRAP_CONTENT));
+        return layout;
+    }
+
+    /**
+     * Creates an input in the state reset() leaves it in, so a fresh input and
+     * a recycled one look and behave the same.
+     */
+    private static EditText newInput(Activity activity) {
+        EditText input = new EditText(activity);
+        reset(input);
+        return input;
+    }
+
+    private static void detach(View view) {
+        if (view.getParent() instanceof ViewGroup) {
+            ((ViewGroup) view.getParent()).removeView(view);
+        }
+    }
+
+    private static void reset(EditText input) {
+        input.setText("");
+        input.setHint(null);
+        input.setError(null);
+        input.setInputType(InputType.TYPE_CLASS_TEXT);
+    }
+}
@@ -44,6 +44,19 @@ exports.defineAutoTests = function () {
             expect(typeof navigator.notification.prompt).toBeDefined();
             expect(typeof navigator.notification.prompt).toBe("function");
         });
+
+        it("should answer a dismissed dialog with buttonIndex -3", function (done) {
+            if (cordova.platformId !== "android") {
+                done();
+                return;
+            }
+            var dialog = navigator.notification.alert("dismiss test", function (buttonIndex) {
+                expect(buttonIndex).toBe(-3);
+                done();
+            });
+            expect(typeof dialog.id).toBe("string");
+            navigator.notification.dismiss(dialog.id);
+        });
     });
 };
 
@@ -131,6 +144,37 @@ exports.defineManualTests = function (contentEl, createActionButton) {
             buttons);
     };
 
+    var burstDialogs = function (count) {
+        clearLog();
+        navigator.notification.resetStats(function () {
+            var answered = 0;
+            var started = Date.now();
+            var done = function () {
+                if (++answered < count) {
+                    return;
+                }
+                var elapsed = Date.now() - started;
+                navigator.notification.stats(function (stats) {
+                    logMessage(count + " dialogs answered in " + elapsed + " ms");
+                    logMessage("Queue: " + JSON.stringify(stats.queue));
+                    for (var action in stats.actions) {
+                        var phases = stats.actions[action];
+                        for (var phase in phases) {
+                            logMessage(action + " " + phase + ": count=" + phases[phase].count +
+                                " p50=" + phases[phase].p50Micros + "us p90=" + phases[phase].p90Micros +
+                                "us p99=" + phases[phase].p99Micros + "us max=" + phases[phase].maxMicros + "us");
+                        }
+                    }
+                });
+            };
+            for (var i = 0; i < count; i++) {
+                // Every third dialog repeats the previous one and should be coalesced
+                var n = i % 3 === 2 ? i - 1 : i;
+                navigator.notification.confirm('Burst dialog ' + n, done, 'Burst', ['OK']);
+            }
+        });
+    };
+
     /******************************************************************************/
 
     var dialogs_tests = '<div id="beep"></div>' +
@@ -145,6 +189,8 @@ exports.defineManualTests = function (contentEl, createActionButton) {
         'Expected result: Dialog will say "You pressed confirm". Press Yes, No, or Maybe, Not Sure to close dialog. Status box will tell you what option you selected.' +
         '<p/> <div id="prompt"></div>' +
         'Expected result: Dialog will say "You pressed prompt". Enter any message and press Yes, No, or Maybe, Not Sure to close dialog. Status box will tell you what option you selected and message you entered.' +
+        '<p/> <div id="burst"></div>' +
+        'Expected result: 30 confirm dialogs are queued at once and appear one at a time; every third one is coalesced with the one before. Press OK on each. Status box will show the queue counters and per-phase latency percentiles.' +
         '<p/> <div id="built_in_alert"></div>' +
         'Expected result: Dialog will have title "index.html" and say "You pressed alert" Press OK to close dialog. Nothing will get updated in status box.' +
         '<p/> <div id="built_in_confirm"></div>' +
@@ -175,6 +221,10 @@ exports.defineManualTests = function (contentEl, createActionButton) {
         promptDialog('You pressed prompt.', 'Prompt Dialog', ['Yes', 'No', 'Maybe, Not Sure']);
     }, 'prompt');
 
+    createActionButton('Dialog Burst', function () {
+        burstDialogs(30);
+    }, 'burst');
+
     createActionButton('Built-in Alert Dialog', function () {
         alert('You pressed alert');
     }, 'built_in_alert');
@@ -20,6 +20,7 @@
  */
 
 var exec = require('cordova/exec');
+var dialog = require('./dialog');
 
 /**
  * Provides Android enhanced notification API.
@@ -28,14 +29,268 @@ module.exports = {
     /**
      * Display List view Dialog
      *
+     * A row may be an object {text, subtitle, icon} instead of a string. icon is
+     * a data: URI, a file path or a path in the app assets; icons are decoded
+     * natively and cached for all dialogs.
+     *
      * @param {String} title
      * @param {array} data
      * @param {function} callback
+     * @param {Object} options      {id, priority, timeout, compact}
+     * @return {Promise}            Resolves with the result; has the dialog id as .id
      */
-    list: function (title, data, callback) {
+    list: function (title, data, callback, options) {
         var _title = title || "List";
         var _data = data || ["list1","list2"];
-        exec(callback, null, 'Notification', 'list', [_title, _data]);
+        return dialog.openDialog('list', [_title, _data], options || {}, callback, true);
+    },
+
+    /**
+     * Display a searchable List view Dialog where several rows can be checked.
+     * Typing in the search field filters the rows, ignoring case and accents.
+     *
+     * @param {String} title
+     * @param {array} data
+     * @param {function} callback       Called with {buttonIndex, selectedIndexes}
+     * @param {Array} buttonLabels      Up to 2 labels, the first accepting (default: ["OK", "Cancel"])
+     * @param {Object} options          {id, priority, timeout, selected: [initially checked indexes]};
+     *                                  compact is ignored, the result is always an object
+     * @return {Promise}                Resolves with the result; has the dialog id as .id
+     */
+    multiList: function (title, data, callback, buttonLabels, options) {
+        var _title = title || "List";
+        var _data = data || [];
+        var _buttonLabels = buttonLabels || ["OK", "Cancel"];
+        return dialog.openDialog('multiList', [_title, _data, _buttonLabels], options || {}, callback, false);
+    },
+
+    /**
+     * Display a List view Dialog that is filled page by page.
+     * The dialog opens with the first page; further pages are added with the
+     * returned handle. If options.onPage is given it is called with the number
+     * of loaded rows whenever the user scrolls near the end of the list.
+     * The handle's id is also the dialog id that dismiss and update take.
+     *
+     * @param {String} title
+     * @param {array} items         First page of items
+     * @param {function} callback   Called with {buttonIndex, selectedIndex}
+     * @param {Object} options      {id, priority, timeout, compact, onPage}
+     * @return {Object}             {id, append(items), end()}
+     */
+    listStream: function (title, items, callback, options) {
+        var _title = title || "List";
+        var _options = options || {};
+        var id = dialog.dialogId(_options);
+        var done = dialog.compactCallback(callback, _options);
+        var win = function (result) {
+            if (result && result.event === "page") {
+                _options.onPage(result.loaded);
+            } else if (done) {
+                done.apply(null, arguments);
+            }
+        };
+        exec(win, null, 'Notification', 'listBegin', [id, _title, items || [], {id: id, priority: _options.priority, timeout: _options.timeout, compact: _options.compact, pageRequests: typeof _options.onPage === "function"}]);
+        return {
+            id: id,
+            append: function (chunk) {
+                exec(null, null, 'Notification', 'listAppend', [id, chunk || []]);
+            },
+            end: function () {
+                exec(null, null, 'Notification', 'listEnd', [id]);
+            }
+        };
+    },
+
+    /**
+     * Run a sequence of dialogs natively in one call.
+     *
+     * Each step is {action, args, next}: action is "alert", "confirm", "prompt",
+     * "list", "multiList" or "login" and args are the exec arguments of that
+     * action. next optionally maps a buttonIndex to the step to run next; any
+     * other value ends the batch. Without a match the following step runs.
+     *
+     * Every step's dialog takes the batch id in place of its own options.id, so
+     * dismiss(id) closes the step on screen. A step closed that way, or by
+     * dismissAll, answers with buttonIndex -3 and ends the batch unless next
+     * maps -3.
+     *
+     * @param {Array} steps
+     * @param {function} onStep     Called with {step, action, result} after each step (optional)
+     * @param {function} callback   Called with the array of step results when the batch ends
+     * @param {function} error      Called with a message if a step is invalid or fails (optional)
+     * @param {Object} options      {id} (optional)
+     * @return {Object}             {id}
+     */
+    batch: function (steps, onStep, callback, error, options) {
+        var id = dialog.dialogId(options);
+        var win = function (result) {
+            if (result && result.done) {
+                if (callback) {
+                    callback(result.results);
+                }
+            } else if (onStep) {
+                onStep(result);
+            }
+        };
+        exec(win, error, 'Notification', 'batch', [steps || [], {id: id}]);
+        return {id: id};
+    },
+
+    /**
+     * Register a dialog once so it can be shown by id with showTemplate.
+     * String arguments may contain {0}, {1}, ... parameters, up to {9999}. Templates always
+     * answer with the default (non-compact) result encoding.
+     *
+     * @param {String} id
+     * @param {String} action       "alert", "confirm", "prompt", "list", "multiList" or "login"
+     * @param {Array} args          The exec arguments of that action, without options
+     * @param {Object} options      Default dialog options; id is ignored (optional)
+     * @param {function} callback   Called once the template is stored (optional)
+     * @param {function} error      Called with a message if the template is invalid (optional)
+     */
+    defineTemplate: function (id, action, args, options, callback, error) {
+        exec(callback, error, 'Notification', 'defineTemplate', [id, action, args || [], options || {}]);
+    },
+
+    /**
+     * Show a dialog registered with defineTemplate. Each showing gets its own
+     * dialog id, options.id or a generated one, like the other dialogs.
+     *
+     * @param {String} id
+     * @param {Array} params        Values for the {n} parameters (optional)
+     * @param {function} callback   Called like the callback of the template's action
+     * @param {Object} options      Options replacing the template's own (optional)
+     * @param {function} error      Called with a message if the template is unknown (optional)
+     * @return {Promise}            Resolves with the result; has the dialog id as .id
+     */
+    showTemplate: function (id, params, callback, options, error) {
+        return dialog.openDialog('showTemplate', [id, params || []], options || {}, callback, false, error);
+    },
+
+    /**
+     * Register a dictionary of prompt suggestions. The prefix index is built
+     * natively once and kept until the app exits; pass its id as the
+     * suggestions option of prompt (with an optional suggestionLimit).
+     *
+     * @param {String} id
+     * @param {Array} entries       Strings, or {text, weight} objects (heavier first)
+     * @param {function} callback   Called with the number of entries (optional)
+     * @param {function} error      Called with a message if an entry is invalid (optional)
+     */
+    registerSuggestions: function (id, entries, callback, error) {
+        exec(callback, error, 'Notification', 'registerSuggestions', [id, entries || []]);
+    },
+
+    /**
+     * Drop a suggestion dictionary.
+     *
+     * @param {String} id
+     * @param {function} callback   Called with 1 if it existed, 0 otherwise (optional)
+     */
+    unregisterSuggestions: function (id, callback) {
+        exec(callback, null, 'Notification', 'unregisterSuggestions', [id]);
+    },
+
+    /**
+     * Show a toast without blocking. Toasts with the same options.key collapse
+     * into one that shows the count. How many are shown per second is limited
+     * by the NoticeRate preference.
+     *
+     * @param {String} message
+     * @param {function} callback   Called with {event, count} once the toast is gone;
+     *                              event is "hidden" or "dropped" (optional)
+     * @param {Object} options      {key, duration: "short" or "long"}
+     */
+    toast: function (message, callback, options) {
+        exec(callback, null, 'Notification', 'toast', [message, options || {}]);
+    },
+
+    /**
+     * Show a snackbar at the bottom of the screen without blocking, queued and
+     * collapsed like toasts.
+     *
+     * @param {String} message
+     * @param {function} callback   Called with {event, count} once the snackbar is gone;
+     *                              event is "action" when its button was tapped,
+     *                              otherwise "hidden" or "dropped" (optional)
+     * @param {Object} options      {key, duration (milliseconds), action (button label)}
+     */
+    snackbar: function (message, callback, options) {
+        exec(callback, null, 'Notification', 'snackbar', [message, options || {}]);
+    },
+
+    /**
+     * Show a spinner dialog
+     *
+     * @param {String} title
+     * @param {String} message
+     */
+    activityStart: function (title, message) {
+        exec(null, null, 'Notification', 'activityStart', [title || "Busy", message || "Please wait..."]);
+    },
+
+    /**
+     * Close the spinner dialog
+     */
+    activityStop: function () {
+        exec(null, null, 'Notification', 'activityStop', []);
+    },
+
+    /**
+     * Show a progress dialog
+     *
+     * @param {String} title
+     * @param {String} message
+     */
+    progressStart: function (title, message) {
+        exec(null, null, 'Notification', 'progressStart', [title || "Progress", message || ""]);
+    },
+
+    /**
+     * Set the progress dialog value. May be called at any rate; the dialog is
+     * updated at most once per frame with the latest value.
+     *
+     * @param {Number} value    0-100
+     */
+    progressValue: function (value) {
+        exec(null, null, 'Notification', 'progressValue', [value]);
+    },
+
+    /**
+     * Close the progress dialog
+     */
+    progressStop: function () {
+        exec(null, null, 'Notification', 'progressStop', []);
+    },
+
+    /**
+     * Get the dialog queue counters
+     *
+     * @param {function} callback   Called with {depth, maxDepth, coalesced, rejected, averageWaitMillis, ...}
+     */
+    queueStats: function (callback) {
+        exec(callback, null, 'Notification', 'queueStats', []);
+    },
+
+    /**
+     * Get the dialog latency statistics
+     *
+     * @param {function} callback   Called with {queue, actions, progress, notices, listStreams, icons}; actions
+     *                              maps each dialog action to dispatch/show/respond/deliver histograms;
+     *                              listStreams counts the unanswered listStream dialogs; icons has the
+     *                              list icon cache hits, misses and size once a list used icons
+     */
+    stats: function (callback) {
+        exec(callback, null, 'Notification', 'stats', []);
+    },
+
+    /**
+     * Clear the dialog latency statistics and queue counters
+     *
+     * @param {function} callback
+     */
+    resetStats: function (callback) {
+        exec(callback, null, 'Notification', 'resetStats', []);
     }
 
 };
@@ -0,0 +1,113 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+var exec = require('cordova/exec');
+
+/**
+ * Wraps a result callback for a dialog opened with {compact: true}.
+ * Compact results arrive as the positional values
+ * (buttonIndex, input1, input2, selectedIndex) and are turned back into
+ * the usual result object, leaving out values that were not sent.
+ */
+function compactCallback(callback, options) {
+	if (!callback || !options || !options.compact) {
+		return callback;
+	}
+	return function (buttonIndex, input1, input2, selectedIndex) {
+		var result = {buttonIndex: buttonIndex};
+		if (input1 !== null && input1 !== undefined) {
+			result.input1 = input1;
+		}
+		if (input2 !== null && input2 !== undefined) {
+			result.input2 = input2;
+		}
+		if (selectedIndex !== null && selectedIndex !== undefined) {
+			result.selectedIndex = selectedIndex;
+		}
+		callback(result);
+	};
+}
+
+var dialogCount = 0;
+
+/**
+ * Returns options.id as a string, or a new id when it is not set.
+ */
+function dialogId(options) {
+	if (!options || options.id === undefined || options.id === null) {
+		return "dialog" + (++dialogCount);
+	}
+	return String(options.id);
+}
+
+/**
+ * Sends a dialog action and returns a promise for its result, carrying the
+ * dialog id (options.id, or a generated one) that dismiss and update take.
+ * The callback, if any, is still called with the same result, and error with
+ * a failure. The options are copied, so one options object can be reused for
+ * several dialogs. Without Promise support a plain object with just the id is
+ * returned.
+ */
+function openDialog(action, args, options, callback, compact, error) {
+	var _options = {};
+	for (var key in options) {
+		if (options.hasOwnProperty(key)) {
+			_options[key] = options[key];
+		}
+	}
+	_options.id = dialogId(_options);
+
+	var settle = {};
+	var handle = {};
+	if (typeof Promise === "function") {
+		handle = new Promise(function (resolve, reject) {
+			settle.resolve = resolve;
+			settle.reject = reject;
+		});
+		// Callback users never look at the promise; don't report its rejection.
+		handle["catch"](function () {});
+	}
+	var win = function (result) {
+		if (callback) {
+			callback(result);
+		}
+		if (settle.resolve) {
+			settle.resolve(result);
+		}
+	};
+	var fail = function (message) {
+		if (error) {
+			error(message);
+		}
+		if (settle.reject) {
+			settle.reject(message);
+		}
+	};
+	exec(compact ? compactCallback(win, _options) : win, fail, "Notification", action, args.concat([_options]));
+	handle.id = _options.id;
+	return handle;
+}
+
+module.exports = {
+	dialogId: dialogId,
+	openDialog: openDialog,
+	compactCallback: compactCallback
+};
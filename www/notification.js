@@ -21,9 +21,14 @@
 
 var exec = require('cordova/exec');
 var platform = require('cordova/platform');
+var openDialog = require('./dialog').openDialog;
 
 /**
  * Provides access to notifications on the device.
+ *
+ * The dialog methods return a promise for the result with an id property.
+ * On Android, dismiss(id) and dismissAll() close or unqueue dialogs and answer
+ * them with buttonIndex -3; update(id, {title, message}) changes one in place.
  */
 
 module.exports = {
@@ -31,27 +36,42 @@ module.exports = {
 	/**
 	 * Open a native alert dialog, with a customizable title and button text.
 	 *
+	 * Android options: priority orders queued dialogs (higher first), and a
+	 * call merged into an identical waiting dialog raises it to its own
+	 * priority; timeout closes the dialog after that many milliseconds with buttonIndex -1.
+	 * A dialog evicted from a full queue is answered with buttonIndex -2, one
+	 * closed with dismiss or dismissAll, or by the activity being destroyed,
+	 * with -3. options.id names the dialog for
+	 * dismiss and update; one is generated when it is left out. options.format
+	 * ("html", "markdown" or "text") shows a long or rich message in a scrolling
+	 * view, parsed off the UI thread.
+	 *
 	 * @param {String} message              Message to print in the body of the alert
 	 * @param {Function} completeCallback   The callback that is called when user clicks on a button.
 	 * @param {String} title                Title of the alert dialog (default: Alert)
 	 * @param {String} buttonLabel          Label of the close button (default: OK)
+	 * @param {Object} options              Dialog options: {id, priority, timeout, format} (optional)
+	 * @return {Promise}                    Resolves with the buttonIndex; has the dialog id as .id
 	 */
-	alert: function (message, completeCallback, title, buttonLabel) {
+	alert: function (message, completeCallback, title, buttonLabel, options) {
 		var _title = (title || "Alert");
 		var _buttonLabel = (buttonLabel || "OK");
-		exec(completeCallback, null, "Notification", "alert", [message, _title, _buttonLabel]);
+		return openDialog("alert", [message, _title, _buttonLabel], options || {}, completeCallback, false);
 	},
 
 	/**
 	 * Open a native confirm dialog, with a customizable title and button text.
 	 * The result that the user selects is returned to the result callback.
+	 * Takes the same options as alert.
 	 *
 	 * @param {String} message              Message to print in the body of the alert
 	 * @param {Function} resultCallback     The callback that is called when user clicks on a button.
 	 * @param {String} title                Title of the alert dialog (default: Confirm)
 	 * @param {Array} buttonLabels          Array of the labels of the buttons (default: ['OK', 'Cancel'])
+	 * @param {Object} options              Dialog options: {id, priority, timeout, format} (optional)
+	 * @return {Promise}                    Resolves with the buttonIndex; has the dialog id as .id
 	 */
-	confirm: function (message, resultCallback, title, buttonLabels) {
+	confirm: function (message, resultCallback, title, buttonLabels, options) {
 		var _title = (title || "Confirm");
 		var _buttonLabels = (buttonLabels || ["OK", "Cancel"]);
 
@@ -75,7 +95,7 @@ module.exports = {
 				_buttonLabels = buttonLabelArray.toString();
 			}
 		}
-		exec(resultCallback, null, "Notification", "confirm", [message, _title, _buttonLabels]);
+		return openDialog("confirm", [message, _title, _buttonLabels], options || {}, resultCallback, false);
 	},
 
 	/**
@@ -84,20 +104,32 @@ module.exports = {
 	 *  buttonIndex     Index number of the button selected.
 	 *  input1          The text entered in the prompt dialog box.
 	 *
+	 * Android option validators checks the input natively as the user types, e.g.
+	 * {required: true, minLength: 3, maxLength: 20, pattern: "[a-z]+", min: 0, max: 10,
+	 * message: "..."}. The first button stays disabled until the input is valid.
+	 *
+	 * Android option compact sends the result over the bridge as positional
+	 * values instead of a JSON object; the callback still gets the same result
+	 * object. It applies to prompt, login and list. multiList ignores it and
+	 * always answers with {buttonIndex, selectedIndexes}, since the positional
+	 * form has no slot for several indexes.
+	 *
 	 * @param {String} message              Dialog message to display (default: "Prompt message")
 	 * @param {Function} resultCallback     The callback that is called when user clicks on a button.
 	 * @param {String} title                Title of the dialog (default: "Prompt")
 	 * @param {Array} buttonLabels          Array of strings for the button labels (default: ["OK","Cancel"])
 	 * @param {String} defaultText          Textbox input value (default: empty string)
 	 * @param {String} dialogType			Dialog type (default simpleText)
+	 * @param {Object} options              Dialog options: {id, priority, timeout, compact, validators, suggestions} (optional)
+	 * @return {Promise}                    Resolves with the result object; has the dialog id as .id
 	 */
-	prompt: function (message, resultCallback, title, buttonLabels, defaultText, dialogType) {
+	prompt: function (message, resultCallback, title, buttonLabels, defaultText, dialogType, options) {
 		var _message = (message || "Prompt message");
 		var _title = (title || "Prompt");
 		var _buttonLabels = (buttonLabels || ["OK", "Cancel"]);
 		var _defaultText = (defaultText || "");
 		var _dialogType = (dialogType || "");
-		exec(resultCallback, null, "Notification", "prompt", [_message, _title, _buttonLabels, _defaultText, _dialogType]);
+		return openDialog("prompt", [_message, _title, _buttonLabels, _defaultText, _dialogType], options || {}, resultCallback, true);
 	},
 
 	/**
@@ -107,12 +139,63 @@ module.exports = {
 	 * @param {function} callback
 	 * @param {Array} buttonLabels
 	 * @param {Array} defaultTexts
+	 * @param {Object} options         {id, priority, timeout, compact, validators, credentials}
+	 *                                 validators is [username rules, password rules] (see prompt).
+	 *                                 credentials is an account name: the Login button stores the
+	 *                                 inputs encrypted on the device, and later dialogs fill them in
+	 *                                 where defaultTexts are empty (Android 6.0 and later)
+	 * @return {Promise}               Resolves with the result object; has the dialog id as .id
 	 */
-	login: function (title, message, callback, buttonLabels, defaultTexts) {
+	login: function (title, message, callback, buttonLabels, defaultTexts, options) {
 		var _title = title || "Login";
 		var _message = message || "Please fill";
 		var _buttonLabels = buttonLabels || ["Login", "Cancel"];
 		var _defaultTexts = defaultTexts || ["",""];
-		exec(callback, null, 'Notification', 'login', [_title, _message, _buttonLabels, _defaultTexts]);
+		return openDialog("login", [_title, _message, _buttonLabels, _defaultTexts], options || {}, callback, true);
+	},
+
+	/**
+	 * Close a dialog, or take it out of the queue if it is not shown yet. Its
+	 * callback and promise get buttonIndex -3. (Android)
+	 *
+	 * @param {String} id               The id of the dialog's promise
+	 * @param {Function} callback       Called with true if the dialog was still open (optional)
+	 */
+	dismiss: function (id, callback) {
+		exec(callback, null, "Notification", "dismiss", [String(id)]);
+	},
+
+	/**
+	 * Close every open and queued dialog like dismiss. (Android)
+	 *
+	 * @param {Function} callback       Called with the number of dialogs closed (optional)
+	 */
+	dismissAll: function (callback) {
+		exec(callback, null, "Notification", "dismissAll", []);
+	},
+
+	/**
+	 * Change the title or message of an open or queued dialog without
+	 * rebuilding it. (Android) List dialogs only take a new title; a message
+	 * for one fails with an error and leaves the dialog unchanged.
+	 *
+	 * @param {String} id               The id of the dialog's promise
+	 * @param {Object} changes          {title, message}; either may be left out
+	 * @param {Function} callback       Called with true if the dialog was still open (optional)
+	 * @param {Function} error          Called with a message if the change was rejected (optional)
+	 */
+	update: function (id, changes, callback, error) {
+		exec(callback, error, "Notification", "update", [String(id), changes || {}]);
+	},
+
+	/**
+	 * Delete the credentials a login dialog stored for an account, e.g. after
+	 * they were rejected or on sign-out. (Android)
+	 *
+	 * @param {String} account          The credentials option given to login
+	 * @param {Function} callback       Called once they are deleted (optional)
+	 */
+	forgetCredentials: function (account, callback) {
+		exec(callback, null, "Notification", "forgetCredentials", [String(account)]);
 	}
 };